@@ -0,0 +1,54 @@
+package com.librelynx.lite;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Address bar classification: is the input an address or a search, and the URL it
+// becomes. Each operation handles the next entry of the input corpus.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AddressInputBenchmark {
+
+    private String[] inputs;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> lines = Fixtures.lines(Fixtures.ADDRESS_INPUTS);
+        inputs = new String[lines.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = lines.get(i).trim();
+        }
+    }
+
+    private String nextInput() {
+        String input = inputs[next];
+        next = next + 1 == inputs.length ? 0 : next + 1;
+        return input;
+    }
+
+    @Benchmark
+    public boolean isUrl() {
+        return AddressInput.isUrl(nextInput());
+    }
+
+    @Benchmark
+    public String searchUrl() {
+        return AddressInput.searchUrl("mojeek", nextInput());
+    }
+
+    // What navigateToUrl does with every submitted input
+    @Benchmark
+    public String toUrl() {
+        return AddressInput.toUrl(nextInput(), "brave");
+    }
+}
@@ -0,0 +1,81 @@
+package com.librelynx.lite;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Element-hiding CSS for a page's host, as the document-start scripts and
+// injectMinimalCSS request it when a page loads. Lookups cycle through the hosts of the
+// request corpus; building and escaping measure the cost of a cache miss.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CosmeticCssBenchmark {
+
+    private List<String> rules;
+    private CosmeticFilterEngine engine;
+    private String[] hosts;
+    private String largestCss;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        rules = new ArrayList<>(Fixtures.rawLines(Fixtures.COSMETIC_SITES));
+        rules.addAll(Fixtures.rawLines(Fixtures.COSMETIC));
+        engine = new CosmeticFilterEngine.Builder().addRules(rules).build();
+
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String url : Fixtures.lines(Fixtures.REQUEST_URLS)) {
+            distinct.add(UrlHosts.host(url));
+        }
+        for (String entry : Fixtures.lines(Fixtures.HISTORY)) {
+            distinct.add(UrlHosts.host(entry.substring(0, entry.indexOf('\t'))));
+        }
+        hosts = distinct.toArray(new String[0]);
+        largestCss = "";
+        for (String host : hosts) {
+            String css = engine.styleFor(host);
+            if (css != null && css.length() > largestCss.length()) {
+                largestCss = css;
+            }
+        }
+    }
+
+    private String nextHost() {
+        String host = hosts[next];
+        next = next + 1 == hosts.length ? 0 : next + 1;
+        return host;
+    }
+
+    @Benchmark
+    public String styleFor() {
+        return engine.styleFor(nextHost());
+    }
+
+    @Benchmark
+    public String injectionScriptFor() {
+        return engine.injectionScriptFor(nextHost());
+    }
+
+    @Benchmark
+    public String buildInjectionScript() {
+        return CosmeticFilterEngine.buildInjectionScript(largestCss);
+    }
+
+    // Parsing the bundled and site lists, done once per blocklist load
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public CosmeticFilterEngine buildEngine() {
+        return new CosmeticFilterEngine.Builder().addRules(rules).build();
+    }
+}
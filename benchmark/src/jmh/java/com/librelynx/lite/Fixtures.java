@@ -0,0 +1,117 @@
+package com.librelynx.lite;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Loads the benchmark corpora from the classpath: fixtures/ holds the URL, input and
+// history samples, blocklists/ the lists bundled with the app.
+final class Fixtures {
+
+    static final String ADDRESS_INPUTS = "fixtures/address-inputs.txt";
+    static final String REQUEST_URLS = "fixtures/request-urls.txt";
+    static final String COSMETIC_SITES = "fixtures/cosmetic-sites.txt";
+    static final String HISTORY = "fixtures/history.tsv";
+    static final String TRACKERS = "blocklists/trackers.txt";
+    static final String COSMETIC = "blocklists/cosmetic.txt";
+
+    // Fixed, so every run and every build measures the same data
+    private static final long SEED = 0x4c4c4231L;
+
+    private static final String[] TLDS = {"com", "net", "org", "io", "de", "co.uk", "fr", "ru", "info", "xyz"};
+    private static final String[] PREFIXES = {"", "", "", "cdn.", "ads.", "track.", "pixel.", "t.", "metrics.", "static."};
+    private static final String[] PATHS = {"article", "wiki", "questions", "watch", "products", "news", "blog", "docs"};
+
+    private Fixtures() {}
+
+    // Non-blank lines that are not "#" comments
+    static List<String> lines(String resource) throws IOException {
+        InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Missing fixture " + resource);
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    // All lines, comments included, for parsers that must skip them themselves
+    static List<String> rawLines(String resource) throws IOException {
+        InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Missing fixture " + resource);
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // Made-up tracker hosts shaped like the ones on public lists, to grow the
+    // bundled list to the size of a full third-party list
+    static List<String> syntheticHosts(int count) {
+        Random random = new Random(SEED);
+        List<String> hosts = new ArrayList<>(count);
+        StringBuilder host = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            host.setLength(0);
+            host.append(PREFIXES[random.nextInt(PREFIXES.length)]);
+            int length = 4 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                host.append((char) ('a' + random.nextInt(26)));
+            }
+            if (random.nextInt(4) == 0) {
+                host.append('-').append(random.nextInt(1000));
+            }
+            host.append('.').append(TLDS[random.nextInt(TLDS.length)]);
+            hosts.add(host.toString());
+        }
+        return hosts;
+    }
+
+    // History entries as {url, title}, the fixture followed by further pages on its
+    // sites. Earlier sites get more pages, so a few hosts dominate as they do in
+    // real histories.
+    static List<String[]> history(int size) throws IOException {
+        List<String[]> sample = new ArrayList<>();
+        for (String line : lines(HISTORY)) {
+            int tab = line.indexOf('\t');
+            sample.add(new String[] {line.substring(0, tab), line.substring(tab + 1)});
+        }
+        Random random = new Random(SEED);
+        List<String[]> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i < sample.size()) {
+                entries.add(sample.get(i));
+                continue;
+            }
+            // Squaring the uniform value skews the pick towards the top of the list
+            double skew = random.nextDouble();
+            String[] base = sample.get((int) (skew * skew * sample.size()));
+            String url = base[0];
+            int pathStart = UrlHosts.pathStart(url, UrlHosts.hostEnd(url, UrlHosts.hostStart(url)));
+            String path = PATHS[random.nextInt(PATHS.length)];
+            entries.add(new String[] {
+                url.substring(0, pathStart) + "/" + path + "/" + Integer.toString(i, 36),
+                base[1] + " " + path + " " + i
+            });
+        }
+        return entries;
+    }
+}
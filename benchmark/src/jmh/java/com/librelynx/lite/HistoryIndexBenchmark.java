@@ -0,0 +1,94 @@
+package com.librelynx.lite;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The index behind address bar suggestions (SuggestionIndex, as Autocomplete uses
+// it): loading it from the top history entries, adding a visit, and ranking the
+// best matches for what has been typed so far.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistoryIndexBenchmark {
+
+    private static final SuggestionIndex.Cancellation NEVER = () -> false;
+
+    @Param({"1000", "20000"})
+    public int entries;
+
+    private List<String[]> history;
+    private SuggestionIndex index;
+    private String[] prefixes;
+    private List<String[]> visits;
+    private int nextPrefix;
+    private int nextVisit;
+
+    @Setup
+    public void setUp() throws IOException {
+        history = Fixtures.history(entries);
+        // What is typed on the way to each site: one to four characters of the host
+        // and of the first title word
+        List<String> typed = new ArrayList<>();
+        for (String line : Fixtures.lines(Fixtures.HISTORY)) {
+            int tab = line.indexOf('\t');
+            String host = SuggestionIndex.stripUrlPrefix(UrlHosts.host(line.substring(0, tab)));
+            String title = line.substring(tab + 1).toLowerCase(Locale.ROOT);
+            for (int length = 1; length <= 4; length++) {
+                typed.add(host.substring(0, Math.min(length, host.length())));
+                typed.add(title.substring(0, Math.min(length, title.length())));
+            }
+        }
+        prefixes = typed.toArray(new String[0]);
+        visits = Fixtures.history(entries * 2).subList(entries, entries * 2);
+    }
+
+    @Setup(Level.Iteration)
+    public void load() {
+        index = build();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public SuggestionIndex loadIndex() {
+        return build();
+    }
+
+    // New pages keep arriving, so this includes the periodic merges
+    @Benchmark
+    public int addVisit() {
+        String[] visit = visits.get(nextVisit);
+        nextVisit = nextVisit + 1 == visits.size() ? 0 : nextVisit + 1;
+        index.addOrBoost(visit[0], visit[1], 0);
+        return index.keyCount();
+    }
+
+    @Benchmark
+    public SuggestionIndex.Result rankPrefix() {
+        String prefix = prefixes[nextPrefix];
+        nextPrefix = nextPrefix + 1 == prefixes.length ? 0 : nextPrefix + 1;
+        return index.query(prefix, NEVER);
+    }
+
+    private SuggestionIndex build() {
+        SuggestionIndex fresh = new SuggestionIndex();
+        SuggestionIndex.Loader loader = fresh.reload();
+        for (int i = 0; i < history.size(); i++) {
+            // Earlier entries are the more frequent ones
+            loader.add(history.get(i)[0], history.get(i)[1], -i);
+        }
+        loader.finish();
+        return fresh;
+    }
+}
@@ -0,0 +1,87 @@
+package com.librelynx.lite;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// The per-request tracker check from shouldInterceptRequest: locate the host, then
+// look it up in the in-memory built-in matcher or the memory-mapped compiled list.
+// Each operation checks the next URL of the request corpus. extraHosts grows the
+// bundled list with synthetic hosts to the size of a full third-party list.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TrackerMatchBenchmark {
+
+    @Param({"0", "50000"})
+    public int extraHosts;
+
+    private String[] urls;
+    private int next;
+    private HostMatcher hostMatcher;
+    private MappedBlocklist mappedBlocklist;
+    private File compiled;
+
+    @Setup
+    public void setUp() throws IOException {
+        urls = Fixtures.lines(Fixtures.REQUEST_URLS).toArray(new String[0]);
+        List<String> rules = new ArrayList<>(Fixtures.rawLines(Fixtures.TRACKERS));
+        rules.addAll(Fixtures.syntheticHosts(extraHosts));
+        hostMatcher = HostMatcher.compile(rules);
+
+        StringBuilder text = new StringBuilder();
+        for (String rule : rules) {
+            text.append(rule).append('\n');
+        }
+        compiled = File.createTempFile("trackers", ".bin");
+        MappedBlocklist.compile(new BufferedReader(new StringReader(text.toString())), compiled, 0);
+        mappedBlocklist = MappedBlocklist.open(compiled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        compiled.delete();
+    }
+
+    private String nextUrl() {
+        String url = urls[next];
+        next = next + 1 == urls.length ? 0 : next + 1;
+        return url;
+    }
+
+    @Benchmark
+    public int locateHost() {
+        String url = nextUrl();
+        int start = UrlHosts.hostStart(url);
+        return UrlHosts.hostEnd(url, start) - start;
+    }
+
+    @Benchmark
+    public boolean hostMatcher() {
+        String url = nextUrl();
+        int start = UrlHosts.hostStart(url);
+        int end = UrlHosts.hostEnd(url, start);
+        return end > start && hostMatcher.matches(url, start, end);
+    }
+
+    @Benchmark
+    public boolean mappedBlocklist() {
+        String url = nextUrl();
+        int start = UrlHosts.hostStart(url);
+        int end = UrlHosts.hostEnd(url, start);
+        return end > start && mappedBlocklist.matches(url, start, end);
+    }
+}
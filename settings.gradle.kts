@@ -4,6 +4,10 @@ pluginManagement {
         mavenCentral()
         gradlePluginPortal()
     }
+    plugins {
+        // The root project is the app
+        id("com.android.application") version "8.13.0"
+    }
 }
 dependencyResolutionManagement {
     repositoriesMode.set(RepositoriesMode.FAIL_ON_PROJECT_REPOS)
@@ -14,4 +18,4 @@ dependencyResolutionManagement {
 }
 
 rootProject.name = "LibreLynx"
-include ':app'
+include(":benchmark")
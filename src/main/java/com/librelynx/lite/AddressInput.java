@@ -0,0 +1,81 @@
+package com.librelynx.lite;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+// Turns what was typed in the address bar into the URL to load: the input itself
+// if it looks like an address, otherwise a search on the chosen engine. Plain Java
+// with no Android dependencies, so the benchmark module can run it on a desktop JVM.
+final class AddressInput {
+
+    static final String BRAVE_SEARCH = "https://search.brave.com/search?q=";
+    static final String MOJEEK_SEARCH = "https://www.mojeek.com/search?q=";
+
+    private static final Pattern TOP_LEVEL_DOMAIN = Pattern.compile(".*\\.[a-zA-Z]{2,}.*");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private AddressInput() {}
+
+    // The URL to navigate to for trimmed, non-empty input
+    static String toUrl(String input, String searchEngine) {
+        if (!isUrl(input)) {
+            return searchUrl(searchEngine, input);
+        }
+        if (!input.startsWith("http://") && !input.startsWith("https://")) {
+            return "https://" + input;
+        }
+        return input;
+    }
+
+    static boolean isUrl(String input) {
+        return input.contains(".") && !input.contains(" ") &&
+               (input.startsWith("http") || input.contains("www") || TOP_LEVEL_DOMAIN.matcher(input).matches());
+    }
+
+    static String searchUrl(String searchEngine, String query) {
+        String encodedQuery = encode(query);
+        switch (searchEngine) {
+            case "brave":
+                return BRAVE_SEARCH + encodedQuery;
+            case "mojeek":
+                return MOJEEK_SEARCH + encodedQuery;
+            default:
+                return BRAVE_SEARCH + encodedQuery; // default search engine
+        }
+    }
+
+    // Percent-encodes everything but the unreserved characters, like Uri.encode
+    static String encode(String s) {
+        int i = 0;
+        while (i < s.length() && isAllowed(s.charAt(i))) {
+            i++;
+        }
+        if (i == s.length()) {
+            return s;
+        }
+        StringBuilder out = new StringBuilder(s.length() + 16).append(s, 0, i);
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (isAllowed(c)) {
+                out.append(c);
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < s.length() && !isAllowed(s.charAt(end))) {
+                end++;
+            }
+            // Encode the whole run at once so surrogate pairs stay together
+            for (byte b : s.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                out.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+            i = end;
+        }
+        return out.toString();
+    }
+
+    private static boolean isAllowed(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || "_-!.~'()*".indexOf(c) >= 0;
+    }
+}
@@ -0,0 +1,137 @@
+package com.librelynx.lite;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.Log;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Decides which links are handed off to native apps.
+//
+// Routes are keyed by exact host or registrable domain, so "m.youtube.com" routes
+// to YouTube but "example.com/?ref=youtube.com" does not. Whether each target app
+// is installed and enabled is looked up once per package and cached, and the cache
+// is dropped for a package when it is installed, updated or removed. A navigation
+// costs at most two map lookups. Which URLs an app opens depends on the path, so
+// that is left to startActivity: a link the app does not handle fails with
+// ActivityNotFoundException and the caller loads it in the browser instead.
+final class AppRouter {
+
+    // {domain, package}; subdomains route to the same app
+    private static final String[][] ROUTES = {
+        {"youtube.com", "com.google.android.youtube"},
+        {"youtu.be", "com.google.android.youtube"},
+        {"twitter.com", "com.twitter.android"},
+        {"instagram.com", "com.instagram.android"},
+        {"facebook.com", "com.facebook.katana"},
+        {"reddit.com", "com.reddit.frontpage"},
+        {"spotify.com", "com.spotify.music"},
+        {"netflix.com", "com.netflix.mediaclient"},
+        {"amazon.com", "com.amazon.mShop.android.shopping"},
+        {"amazon.co.uk", "com.amazon.mShop.android.shopping"},
+        {"github.com", "com.github.android"}
+    };
+
+    private final Context context;
+    private final Map<String, String> routes = new HashMap<>();
+    // package -> installed and enabled, filled on first use
+    private final Map<String, Boolean> available = new ConcurrentHashMap<>();
+    private boolean registered;
+
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            String packageName = data != null ? data.getSchemeSpecificPart() : null;
+            if (packageName != null && available.remove(packageName) != null) {
+                Log.d("AppRouter", "Package changed, re-resolving: " + packageName);
+            }
+        }
+    };
+
+    AppRouter(Context context) {
+        this.context = context.getApplicationContext();
+        for (String[] route : ROUTES) {
+            routes.put(route[0], route[1]);
+        }
+    }
+
+    void register() {
+        if (registered) {
+            return;
+        }
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        context.registerReceiver(packageReceiver, filter);
+        registered = true;
+    }
+
+    void unregister() {
+        if (!registered) {
+            return;
+        }
+        try {
+            context.unregisterReceiver(packageReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.w("AppRouter", "Receiver was not registered: " + e.getMessage());
+        }
+        registered = false;
+    }
+
+    // Intent for the app that should open the URL, or null to keep it in the browser
+    Intent intentFor(String url) {
+        if (url == null || !url.startsWith("http")) {
+            return null;
+        }
+        int hostStart = UrlHosts.hostStart(url);
+        int hostEnd = UrlHosts.hostEnd(url, hostStart);
+        if (hostEnd <= hostStart) {
+            return null;
+        }
+        String host = url.substring(hostStart, hostEnd).toLowerCase(Locale.ROOT);
+        String packageName = routes.get(host);
+        if (packageName == null) {
+            int siteStart = UrlHosts.siteStart(host, 0, host.length());
+            if (siteStart > 0) {
+                packageName = routes.get(host.substring(siteStart));
+            }
+        }
+        if (packageName == null || !isAvailable(packageName)) {
+            return null;
+        }
+        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+        intent.setPackage(packageName);
+        return intent;
+    }
+
+    // Visible to this app through the manifest's <queries>
+    private boolean isAvailable(String packageName) {
+        Boolean cached = available.get(packageName);
+        if (cached != null) {
+            return cached;
+        }
+        boolean enabled;
+        try {
+            ApplicationInfo info = context.getPackageManager().getApplicationInfo(packageName, 0);
+            enabled = info.enabled;
+        } catch (PackageManager.NameNotFoundException e) {
+            enabled = false;
+        } catch (Exception e) {
+            Log.e("AppRouter", "Error looking up " + packageName + ": " + e.getMessage(), e);
+            enabled = false;
+        }
+        available.put(packageName, enabled);
+        Log.d("AppRouter", packageName + (enabled ? " installed" : " not available"));
+        return enabled;
+    }
+}
@@ -0,0 +1,156 @@
+package com.librelynx.lite;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Omnibox suggestions from history and bookmarks.
+//
+// The suggestions are ranked by a SuggestionIndex that lives on a single worker
+// thread: loading, incremental updates and queries are all tasks on it, so nothing
+// is locked. Each keystroke bumps a generation counter; a query that sees a newer
+// generation stops scanning and its result is dropped, so only the latest text is
+// answered.
+final class Autocomplete {
+
+    // Immutable copy handed to the UI
+    static final class Match {
+        final String url;
+        final String title;
+
+        Match(String url, String title) {
+            this.url = url;
+            this.title = title;
+        }
+    }
+
+    static final class Result {
+        final String query;
+        final List<Match> matches;
+        // Host to complete the typed text to, or null
+        final String inlineCompletion;
+
+        Result(String query, List<Match> matches, String inlineCompletion) {
+            this.query = query;
+            this.matches = matches;
+            this.inlineCompletion = inlineCompletion;
+        }
+    }
+
+    interface Listener {
+        void onResult(Result result);
+    }
+
+    private static final int MAX_INDEXED = 50000;
+    // A bookmark ranks like five visits at the time it was indexed
+    private static final double BOOKMARK_BOOST = Math.log(5);
+
+    private final HistoryStore history;
+    private final SuggestionIndex index = new SuggestionIndex(); // worker thread only
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autocomplete");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    Autocomplete(HistoryStore history) {
+        this.history = history;
+    }
+
+    // Builds the index from the top history entries plus the given bookmarks (url -> title)
+    void load(Map<String, ?> bookmarks) {
+        final Map<String, Object> bookmarkCopy = new HashMap<>(bookmarks);
+        history.readTop(MAX_INDEXED, entries -> worker.execute(() -> {
+            long started = System.currentTimeMillis();
+            SuggestionIndex.Loader loader = index.reload();
+            for (HistoryStore.Entry entry : entries) {
+                loader.add(entry.url, entry.title, entry.frecency);
+            }
+            double now = Frecency.visitScore(System.currentTimeMillis());
+            for (Map.Entry<String, Object> bookmark : bookmarkCopy.entrySet()) {
+                String title = bookmark.getValue() instanceof String ? (String) bookmark.getValue() : bookmark.getKey();
+                loader.add(bookmark.getKey(), title, now + BOOKMARK_BOOST);
+            }
+            loader.finish();
+            Log.d("Autocomplete", "Indexed " + index.size() + " entries (" + index.keyCount() + " keys) in "
+                    + (System.currentTimeMillis() - started) + " ms");
+        }));
+    }
+
+    void onVisit(String url, String title) {
+        final double score = Frecency.visitScore(System.currentTimeMillis());
+        worker.execute(() -> index.addOrBoost(url, title, score));
+    }
+
+    void onBookmark(String url, String title) {
+        final double score = Frecency.visitScore(System.currentTimeMillis()) + BOOKMARK_BOOST;
+        worker.execute(() -> index.addOrBoost(url, title, score));
+    }
+
+    // Re-indexes a known URL under its new title without counting a visit
+    void onTitle(String url, String title) {
+        worker.execute(() -> {
+            if (index.contains(url)) {
+                index.addOrBoost(url, title, Double.NEGATIVE_INFINITY);
+            }
+        });
+    }
+
+    void onRemoved(String url) {
+        worker.execute(() -> index.remove(url));
+    }
+
+    // Drops the bookmark boost of a URL that is no longer bookmarked: it stays
+    // suggested only as far as its history ranks it
+    void onBookmarkRemoved(String url) {
+        history.find(url, entry -> worker.execute(() -> {
+            index.remove(url);
+            if (entry != null) {
+                index.addOrBoost(url, entry.title, entry.frecency);
+            }
+        }));
+    }
+
+    // Supersedes any running query; the listener is called on the main thread
+    void query(String text, Listener listener) {
+        final int queryGeneration = generation.incrementAndGet();
+        worker.execute(() -> {
+            if (generation.get() != queryGeneration) {
+                return;
+            }
+            Result result = runQuery(text, queryGeneration);
+            if (result != null) {
+                mainHandler.post(() -> {
+                    if (generation.get() == queryGeneration) {
+                        listener.onResult(result);
+                    }
+                });
+            }
+        });
+    }
+
+    void cancel() {
+        generation.incrementAndGet();
+    }
+
+    private Result runQuery(String text, int queryGeneration) {
+        SuggestionIndex.Result found = index.query(text, () -> generation.get() != queryGeneration);
+        if (found == null || generation.get() != queryGeneration) {
+            return null;
+        }
+        List<Match> matches = new ArrayList<>(found.matches.size());
+        for (SuggestionIndex.Candidate candidate : found.matches) {
+            matches.add(new Match(candidate.url, candidate.title));
+        }
+        return new Result(text, matches, found.inlineCompletion);
+    }
+}
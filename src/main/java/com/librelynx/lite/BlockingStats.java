@@ -0,0 +1,98 @@
+package com.librelynx.lite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tracker blocking counters for one tab or for the whole app. Recording is cheap
+// enough for the request-interception path: allowed requests bump one striped
+// counter; blocked requests also update the per-host tally.
+final class BlockingStats {
+
+    // Bounds the host tally so a page that hits thousands of hosts cannot grow it forever
+    private static final int MAX_TRACKED_HOSTS = 256;
+
+    private final StripedCounter seen = new StripedCounter();
+    private final StripedCounter blocked = new StripedCounter();
+    private final StripedCounter bytesAvoided = new StripedCounter();
+    private final StripedCounter pageBlocked = new StripedCounter();
+    private final ConcurrentHashMap<String, AtomicInteger> hostCounts = new ConcurrentHashMap<>();
+
+    static final class HostCount {
+        final String host;
+        final int count;
+
+        HostCount(String host, int count) {
+            this.host = host;
+            this.count = count;
+        }
+    }
+
+    void recordSeen() {
+        seen.increment();
+    }
+
+    void recordBlocked(String host, ResourceType type) {
+        blocked.increment();
+        pageBlocked.increment();
+        bytesAvoided.add(type.estimatedBytes);
+        AtomicInteger count = hostCounts.get(host);
+        if (count == null && hostCounts.size() < MAX_TRACKED_HOSTS) {
+            AtomicInteger created = new AtomicInteger();
+            count = hostCounts.putIfAbsent(host, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        if (count != null) {
+            count.incrementAndGet();
+        }
+    }
+
+    // Called when the tab starts a new top-level document
+    void startPage() {
+        pageBlocked.reset();
+    }
+
+    long requestsSeen() {
+        return seen.sum();
+    }
+
+    long requestsBlocked() {
+        return blocked.sum();
+    }
+
+    long estimatedBytesAvoided() {
+        return bytesAvoided.sum();
+    }
+
+    long blockedOnPage() {
+        return pageBlocked.sum();
+    }
+
+    List<HostCount> topHosts(int limit) {
+        List<HostCount> hosts = new ArrayList<>(hostCounts.size());
+        for (Map.Entry<String, AtomicInteger> entry : hostCounts.entrySet()) {
+            hosts.add(new HostCount(entry.getKey(), entry.getValue().get()));
+        }
+        Collections.sort(hosts, (a, b) -> Integer.compare(b.count, a.count));
+        return hosts.size() > limit ? hosts.subList(0, limit) : hosts;
+    }
+
+    void reset() {
+        seen.reset();
+        blocked.reset();
+        bytesAvoided.reset();
+        pageBlocked.reset();
+        hostCounts.clear();
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format(java.util.Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        return String.format(java.util.Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,10 @@
+package com.librelynx.lite;
+
+// A set of blocked hosts queried with a host range located by UrlHosts.
+// Implementations must be immutable and safe to call from the WebView IO thread.
+interface Blocklist {
+
+    boolean matches(String url, int hostStart, int hostEnd);
+
+    int size();
+}
@@ -0,0 +1,87 @@
+package com.librelynx.lite;
+
+import android.content.Context;
+import android.util.Log;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Owns the active tracker lists. Lists are compiled and mapped on a background
+// thread and published as an immutable Snapshot through an AtomicReference, so the
+// request path reads the current lists with a single volatile load and never waits.
+// Cosmetic (element-hiding) rules travel in the same snapshot. Until the first load
+// completes the snapshot holds only the built-in rules.
+final class BlocklistManager {
+
+    static final class Snapshot {
+        final Blocklist builtin;
+        final Blocklist compiled; // null until a compiled list is available
+        final CosmeticFilterEngine cosmetic;
+        final int generation;
+
+        Snapshot(Blocklist builtin, Blocklist compiled, CosmeticFilterEngine cosmetic, int generation) {
+            this.builtin = builtin;
+            this.compiled = compiled;
+            this.cosmetic = cosmetic;
+            this.generation = generation;
+        }
+
+        boolean matches(String url, int hostStart, int hostEnd) {
+            return (compiled != null && compiled.matches(url, hostStart, hostEnd))
+                    || builtin.matches(url, hostStart, hostEnd);
+        }
+
+        int size() {
+            return builtin.size() + (compiled != null ? compiled.size() : 0);
+        }
+    }
+
+    private final String[] builtinCosmeticRules;
+    private final AtomicReference<Snapshot> current;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "blocklist-loader");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    BlocklistManager(Blocklist builtin, String[] builtinCosmeticRules) {
+        this.builtinCosmeticRules = builtinCosmeticRules;
+        CosmeticFilterEngine cosmetic = new CosmeticFilterEngine.Builder().addRules(builtinCosmeticRules).build();
+        current = new AtomicReference<>(new Snapshot(builtin, null, cosmetic, 0));
+    }
+
+    Snapshot current() {
+        return current.get();
+    }
+
+    // True once a compiled list has been published
+    boolean isLoaded() {
+        return current.get().generation > 0;
+    }
+
+    // Compiles (if stale) and maps the tracker list and parses the cosmetic rules off
+    // the calling thread, then swaps them in. Pages already loading keep using whichever snapshot they read; the old
+    // mapping stays valid until nothing references it.
+    void reload(Context context) {
+        final Context appContext = context.getApplicationContext();
+        loader.execute(() -> {
+            try {
+                long started = System.currentTimeMillis();
+                MappedBlocklist compiled = BlocklistStore.open(appContext);
+                CosmeticFilterEngine cosmetic = BlocklistStore.openCosmetic(appContext, builtinCosmeticRules);
+                Snapshot previous;
+                Snapshot next;
+                do {
+                    previous = current.get();
+                    next = new Snapshot(previous.builtin, compiled, cosmetic, previous.generation + 1);
+                } while (!current.compareAndSet(previous, next));
+                Log.d("Blocklist", "Published snapshot " + next.generation + " with " + next.size()
+                        + " rules and " + cosmetic.size() + " cosmetic rules in "
+                        + (System.currentTimeMillis() - started) + " ms");
+            } catch (Exception e) {
+                Log.e("Blocklist", "Error loading tracker blocklist, keeping current snapshot: " + e.getMessage(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package com.librelynx.lite;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+// Locates the compiled tracker list in app storage, rebuilding it from the bundled
+// text asset when the app is installed or updated. Assets are compressed inside the
+// APK and cannot be mapped, so the binary form lives in files/blocklists.
+final class BlocklistStore {
+
+    static final String ASSET_LIST = "blocklists/trackers.txt";
+    static final String COMPILED_FILE = "blocklists/trackers.bin";
+    static final String COSMETIC_ASSET = "blocklists/cosmetic.txt";
+
+    private BlocklistStore() {}
+
+    static MappedBlocklist open(Context context) throws IOException {
+        File compiled = new File(context.getFilesDir(), COMPILED_FILE);
+        long stamp = sourceStamp(context);
+
+        if (compiled.isFile()) {
+            try {
+                MappedBlocklist existing = MappedBlocklist.open(compiled);
+                if (existing.sourceStamp() == stamp) {
+                    return existing;
+                }
+                Log.d("Blocklist", "Compiled list is stale, rebuilding");
+            } catch (IOException e) {
+                Log.w("Blocklist", "Compiled list unreadable, rebuilding: " + e.getMessage());
+            }
+        }
+
+        long started = System.currentTimeMillis();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                context.getAssets().open(ASSET_LIST), Charset.forName("UTF-8")));
+        int count;
+        try {
+            count = MappedBlocklist.compile(reader, compiled, stamp);
+        } finally {
+            reader.close();
+        }
+        Log.d("Blocklist", "Compiled " + count + " hosts in " + (System.currentTimeMillis() - started) + " ms");
+        return MappedBlocklist.open(compiled);
+    }
+
+    // Element-hiding rules are small enough to parse straight from the asset
+    static CosmeticFilterEngine openCosmetic(Context context, String[] builtinRules) throws IOException {
+        CosmeticFilterEngine.Builder builder = new CosmeticFilterEngine.Builder().addRules(builtinRules);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                context.getAssets().open(COSMETIC_ASSET), Charset.forName("UTF-8")));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.addRule(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return builder.build();
+    }
+
+    // Changes whenever a new APK (and therefore a new bundled list) is installed
+    private static long sourceStamp(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,586 @@
+package com.librelynx.lite;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Bookmarks and folders in SQLite, with stable IDs and explicit ordering.
+//
+// Every operation runs on a background thread and reports back on the main thread
+// with exactly what changed (the inserted row, the removed ID), so lists can
+// apply the change in place instead of reloading. Children of a folder are read
+// page by page in position order, so opening a folder costs the same with 50 or
+// 5,000 bookmarks in it.
+final class BookmarkStore {
+
+    static final long ROOT_ID = 0;
+
+    static final class Bookmark {
+        final long id;
+        final long parentId;
+        final boolean folder;
+        final String title;
+        final String url; // null for folders
+        final int position;
+        final long createdAt;
+        final long updatedAt;
+
+        Bookmark(long id, long parentId, boolean folder, String title, String url, int position,
+                 long createdAt, long updatedAt) {
+            this.id = id;
+            this.parentId = parentId;
+            this.folder = folder;
+            this.title = title;
+            this.url = url;
+            this.position = position;
+            this.createdAt = createdAt;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    static final class Page {
+        final List<Bookmark> bookmarks;
+        final boolean hasMore;
+
+        Page(List<Bookmark> bookmarks, boolean hasMore) {
+            this.bookmarks = bookmarks;
+            this.hasMore = hasMore;
+        }
+
+        Bookmark last() {
+            return bookmarks.isEmpty() ? null : bookmarks.get(bookmarks.size() - 1);
+        }
+    }
+
+    private static final String LEGACY_PREFS = "LibreLynxBookmarks";
+    private static final String COLUMNS =
+            "_id, parent_id, is_folder, title, url, position, created_at, updated_at";
+    private static final int SEARCH_CANDIDATES = 1000;
+    private static final double[] SEARCH_WEIGHTS = {2.0, 1.0}; // title, url
+
+    private static BookmarkStore instance;
+
+    private final Context context;
+    private final BrowserDatabase database;
+    private final Handler writer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    static synchronized BookmarkStore get(Context context) {
+        if (instance == null) {
+            instance = new BookmarkStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private BookmarkStore(Context context) {
+        this.context = context;
+        this.database = BrowserDatabase.get(context);
+        HandlerThread thread = new HandlerThread("bookmark-writer", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        writer = new Handler(thread.getLooper());
+        writer.post(this::migrateLegacyPrefs);
+    }
+
+    // Appends a bookmark to the folder. Bookmarking a URL already in the folder updates
+    // its title instead. The stored row is delivered on the main thread (null on error).
+    void add(long parentId, String title, String url, ResultCallback<Bookmark> callback) {
+        writer.post(() -> {
+            Bookmark result = null;
+            try {
+                SQLiteDatabase db = database.getWritableDatabase();
+                String safeTitle = title != null && !title.isEmpty() ? title : url;
+                Bookmark existing = findByUrl(db, parentId, url);
+                if (existing != null) {
+                    ContentValues values = new ContentValues();
+                    values.put("title", safeTitle);
+                    values.put("updated_at", System.currentTimeMillis());
+                    db.update("bookmarks", values, "_id = ?", new String[] {Long.toString(existing.id)});
+                    result = new Bookmark(existing.id, parentId, false, safeTitle, url, existing.position,
+                            existing.createdAt, System.currentTimeMillis());
+                } else {
+                    result = insert(db, parentId, false, safeTitle, url, System.currentTimeMillis());
+                }
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error adding bookmark: " + e.getMessage(), e);
+            }
+            deliver(callback, result);
+        });
+    }
+
+    void addFolder(long parentId, String title, ResultCallback<Bookmark> callback) {
+        writer.post(() -> {
+            Bookmark result = null;
+            try {
+                result = insert(database.getWritableDatabase(), parentId, true, title, null, System.currentTimeMillis());
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error adding folder: " + e.getMessage(), e);
+            }
+            deliver(callback, result);
+        });
+    }
+
+    // Moves to the end of another folder; delivers true on success
+    void move(long id, long newParentId, ResultCallback<Boolean> callback) {
+        writer.post(() -> {
+            boolean moved = false;
+            try {
+                SQLiteDatabase db = database.getWritableDatabase();
+                if (id != newParentId && !isDescendant(db, newParentId, id)) {
+                    ContentValues values = new ContentValues();
+                    values.put("parent_id", newParentId);
+                    values.put("position", nextPosition(db, newParentId));
+                    values.put("updated_at", System.currentTimeMillis());
+                    moved = db.update("bookmarks", values, "_id = ?", new String[] {Long.toString(id)}) == 1;
+                }
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error moving bookmark: " + e.getMessage(), e);
+            }
+            deliver(callback, moved);
+        });
+    }
+
+    // Removes a bookmark, or a folder with everything in it. Delivers the URLs that
+    // are no longer bookmarked anywhere, or null on failure.
+    void remove(long id, ResultCallback<List<String>> callback) {
+        writer.post(() -> {
+            List<String> removed = null;
+            SQLiteDatabase db = database.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                Set<String> urls = new LinkedHashSet<>();
+                List<Long> pending = new ArrayList<>();
+                pending.add(id);
+                while (!pending.isEmpty()) {
+                    long next = pending.remove(pending.size() - 1);
+                    pending.addAll(childFolderIds(db, next));
+                    String[] args = {Long.toString(next)};
+                    collectUrls(db, next, urls);
+                    db.delete("bookmarks", "parent_id = ?", args);
+                    db.delete("bookmarks", "_id = ?", args);
+                }
+                // The same page may still be bookmarked in another folder
+                Iterator<String> iterator = urls.iterator();
+                while (iterator.hasNext()) {
+                    if (isBookmarked(db, iterator.next())) {
+                        iterator.remove();
+                    }
+                }
+                db.setTransactionSuccessful();
+                removed = new ArrayList<>(urls);
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error removing bookmark: " + e.getMessage(), e);
+            } finally {
+                db.endTransaction();
+            }
+            deliver(callback, removed);
+        });
+    }
+
+    void clear(ResultCallback<Boolean> callback) {
+        writer.post(() -> {
+            boolean cleared = false;
+            try {
+                database.getWritableDatabase().delete("bookmarks", null, null);
+                cleared = true;
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error clearing bookmarks: " + e.getMessage(), e);
+            }
+            deliver(callback, cleared);
+        });
+    }
+
+    // Children of a folder after `after` (null for the first page), in the order they
+    // were added or moved in
+    void queryChildren(long parentId, Page after, int limit, ResultCallback<Page> callback) {
+        final Bookmark last = after != null ? after.last() : null;
+        writer.post(() -> {
+            List<Bookmark> bookmarks = new ArrayList<>();
+            try {
+                SQLiteDatabase db = database.getReadableDatabase();
+                String parent = Long.toString(parentId);
+                String sql = "SELECT " + COLUMNS + " FROM bookmarks WHERE parent_id = ?"
+                        + (last != null ? " AND (position > ? OR (position = ? AND _id > ?))" : "")
+                        + " ORDER BY position, _id LIMIT " + (limit + 1);
+                String[] args = last == null ? new String[] {parent} : new String[] {parent,
+                        Integer.toString(last.position), Integer.toString(last.position), Long.toString(last.id)};
+                readInto(db.rawQuery(sql, args), bookmarks);
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error querying bookmarks: " + e.getMessage(), e);
+            }
+            boolean hasMore = bookmarks.size() > limit;
+            if (hasMore) {
+                bookmarks.remove(limit);
+            }
+            deliver(callback, new Page(bookmarks, hasMore));
+        });
+    }
+
+    // Every folder, for "move to" pickers
+    void queryFolders(ResultCallback<List<Bookmark>> callback) {
+        writer.post(() -> {
+            List<Bookmark> folders = new ArrayList<>();
+            try {
+                readInto(database.getReadableDatabase().rawQuery("SELECT " + COLUMNS
+                        + " FROM bookmarks WHERE is_folder = 1 ORDER BY title COLLATE NOCASE", null), folders);
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error querying folders: " + e.getMessage(), e);
+            }
+            deliver(callback, folders);
+        });
+    }
+
+    // Bookmarks and folders in any folder whose title or URL contain every word of
+    // the text as a prefix, most relevant first
+    void search(String text, int limit, ResultCallback<List<Bookmark>> callback) {
+        final String match = FullTextSearch.matchQuery(text);
+        writer.post(() -> {
+            List<Bookmark> bookmarks = new ArrayList<>();
+            List<Double> scores = new ArrayList<>();
+            Cursor cursor = null;
+            try {
+                if (match != null) {
+                    cursor = database.getReadableDatabase().rawQuery("SELECT b._id, b.parent_id, b.is_folder, "
+                            + "b.title, b.url, b.position, b.created_at, b.updated_at, matchinfo(bookmarks_fts, 'pcnx') "
+                            + "FROM bookmarks_fts JOIN bookmarks b ON b._id = bookmarks_fts.docid "
+                            + "WHERE bookmarks_fts MATCH ? ORDER BY b.title COLLATE NOCASE LIMIT " + SEARCH_CANDIDATES,
+                            new String[] {match});
+                    while (cursor.moveToNext()) {
+                        bookmarks.add(new Bookmark(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2) != 0,
+                                cursor.getString(3), cursor.getString(4), cursor.getInt(5),
+                                cursor.getLong(6), cursor.getLong(7)));
+                        scores.add(FullTextSearch.relevance(cursor.getBlob(8), SEARCH_WEIGHTS));
+                    }
+                }
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error searching bookmarks: " + e.getMessage(), e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            deliver(callback, FullTextSearch.topByScore(bookmarks, scores, limit));
+        });
+    }
+
+    // All bookmarked URLs with their titles, for search indexes
+    void readUrls(ResultCallback<Map<String, String>> callback) {
+        writer.post(() -> {
+            Map<String, String> urls = new LinkedHashMap<>();
+            Cursor cursor = null;
+            try {
+                cursor = database.getReadableDatabase().rawQuery(
+                        "SELECT url, title FROM bookmarks WHERE is_folder = 0", null);
+                while (cursor.moveToNext()) {
+                    urls.put(cursor.getString(0), cursor.getString(1));
+                }
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error reading bookmarks: " + e.getMessage(), e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            deliver(callback, urls);
+        });
+    }
+
+    // Streams a Netscape bookmark file into the store and closes it. Folders merge
+    // with a same-named folder at the same level; URLs bookmarked anywhere already
+    // (or earlier in the file) are skipped.
+    void importHtml(InputStream in, DataTransfer.Progress progress, ResultCallback<DataTransfer.Result> callback) {
+        writer.post(() -> {
+            SQLiteDatabase db = database.getWritableDatabase();
+            Set<Long> known = new HashSet<>();
+            int[] counts = new int[3]; // processed, added, skipped
+            String error = null;
+            db.beginTransaction();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
+                Cursor cursor = db.rawQuery("SELECT url FROM bookmarks WHERE is_folder = 0", null);
+                try {
+                    while (cursor.moveToNext()) {
+                        known.add(DataTransfer.fingerprint(cursor.getString(0)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                List<Long> parents = new ArrayList<>();
+                parents.add(ROOT_ID);
+                NetscapeBookmarks.read(reader, new NetscapeBookmarks.Visitor() {
+                    @Override
+                    public void onFolderStart(String title, long addDate) {
+                        long parentId = parents.get(parents.size() - 1);
+                        String name = title.isEmpty() ? "Imported" : title;
+                        Long existing = findFolder(db, parentId, name);
+                        parents.add(existing != null ? existing
+                                : insert(db, parentId, true, name, null, dateOrNow(addDate)).id);
+                    }
+
+                    @Override
+                    public void onFolderEnd() {
+                        if (parents.size() > 1) {
+                            parents.remove(parents.size() - 1);
+                        }
+                    }
+
+                    @Override
+                    public void onBookmark(String title, String url, long addDate) {
+                        counts[0]++;
+                        if (!DataTransfer.isImportableUrl(url) || !known.add(DataTransfer.fingerprint(url))) {
+                            counts[2]++;
+                        } else {
+                            insert(db, parents.get(parents.size() - 1), false, title.isEmpty() ? url : title, url,
+                                    dateOrNow(addDate));
+                            counts[1]++;
+                        }
+                        if (counts[0] % DataTransfer.BATCH_SIZE == 0) {
+                            commitBatch(db);
+                            reportProgress(progress, counts[0]);
+                        }
+                    }
+                });
+                db.setTransactionSuccessful();
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error importing bookmarks: " + e.getMessage(), e);
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            } finally {
+                db.endTransaction();
+            }
+            Log.d("Bookmarks", "Imported " + counts[1] + " of " + counts[0] + " bookmarks");
+            deliver(callback, new DataTransfer.Result(counts[0], counts[1], counts[2], error));
+        });
+    }
+
+    // Writes every folder and bookmark as a Netscape bookmark file and closes the stream
+    void exportHtml(OutputStream out, DataTransfer.Progress progress, ResultCallback<DataTransfer.Result> callback) {
+        writer.post(() -> {
+            int[] written = new int[1];
+            String error = null;
+            try (Writer stream = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"))) {
+                NetscapeBookmarks.Output output = new NetscapeBookmarks.Output(stream);
+                output.begin();
+                exportFolder(database.getReadableDatabase(), ROOT_ID, output, written, progress);
+                output.end();
+            } catch (Exception e) {
+                Log.e("Bookmarks", "Error exporting bookmarks: " + e.getMessage(), e);
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+            deliver(callback, new DataTransfer.Result(written[0], written[0], 0, error));
+        });
+    }
+
+    // Depth first in display order, one cursor per open folder
+    private void exportFolder(SQLiteDatabase db, long parentId, NetscapeBookmarks.Output output, int[] written,
+                              DataTransfer.Progress progress) throws IOException {
+        Cursor cursor = db.rawQuery("SELECT _id, is_folder, title, url, created_at FROM bookmarks "
+                + "WHERE parent_id = ? ORDER BY position, _id", new String[] {Long.toString(parentId)});
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.getInt(1) != 0) {
+                    output.startFolder(cursor.getString(2), cursor.getLong(4));
+                    exportFolder(db, cursor.getLong(0), output, written, progress);
+                    output.endFolder();
+                } else {
+                    output.bookmark(cursor.getString(2), cursor.getString(3), cursor.getLong(4));
+                    if (++written[0] % DataTransfer.BATCH_SIZE == 0) {
+                        reportProgress(progress, written[0]);
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Commits what the open transaction holds and starts the next one
+    private static void commitBatch(SQLiteDatabase db) {
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        db.beginTransaction();
+    }
+
+    private void reportProgress(DataTransfer.Progress progress, int processed) {
+        if (progress != null) {
+            mainHandler.post(() -> progress.onProgress(processed));
+        }
+    }
+
+    private static long dateOrNow(long date) {
+        return date > 0 ? date : System.currentTimeMillis();
+    }
+
+    private static Long findFolder(SQLiteDatabase db, long parentId, String title) {
+        Cursor cursor = db.rawQuery("SELECT _id FROM bookmarks WHERE parent_id = ? AND is_folder = 1 AND title = ? LIMIT 1",
+                new String[] {Long.toString(parentId), title});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private <T> void deliver(ResultCallback<T> callback, T result) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onResult(result));
+        }
+    }
+
+    private Bookmark insert(SQLiteDatabase db, long parentId, boolean folder, String title, String url, long now) {
+        int position = nextPosition(db, parentId);
+        ContentValues values = new ContentValues();
+        values.put("parent_id", parentId);
+        values.put("is_folder", folder ? 1 : 0);
+        values.put("title", title);
+        values.put("url", url);
+        values.put("position", position);
+        values.put("created_at", now);
+        values.put("updated_at", now);
+        long id = db.insert("bookmarks", null, values);
+        if (id < 0) {
+            throw new IllegalStateException("Insert failed");
+        }
+        return new Bookmark(id, parentId, folder, title, url, position, now, now);
+    }
+
+    private static int nextPosition(SQLiteDatabase db, long parentId) {
+        Cursor cursor = db.rawQuery("SELECT MAX(position) FROM bookmarks WHERE parent_id = ?",
+                new String[] {Long.toString(parentId)});
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getInt(0) + 1 : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Bookmark findByUrl(SQLiteDatabase db, long parentId, String url) {
+        List<Bookmark> found = new ArrayList<>(1);
+        readInto(db.rawQuery("SELECT " + COLUMNS + " FROM bookmarks WHERE url = ? AND parent_id = ? LIMIT 1",
+                new String[] {url, Long.toString(parentId)}), found);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    // URLs of the bookmark `id` and of the bookmarks directly inside it
+    private static void collectUrls(SQLiteDatabase db, long id, Set<String> urls) {
+        Cursor cursor = db.rawQuery("SELECT url FROM bookmarks WHERE (_id = ? OR parent_id = ?) AND is_folder = 0",
+                new String[] {Long.toString(id), Long.toString(id)});
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.getString(0) != null) {
+                    urls.add(cursor.getString(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean isBookmarked(SQLiteDatabase db, String url) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM bookmarks WHERE url = ? LIMIT 1", new String[] {url});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<Long> childFolderIds(SQLiteDatabase db, long parentId) {
+        List<Long> ids = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT _id FROM bookmarks WHERE parent_id = ? AND is_folder = 1",
+                new String[] {Long.toString(parentId)});
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    // True if `id` is `ancestorId` or lies somewhere below it
+    private static boolean isDescendant(SQLiteDatabase db, long id, long ancestorId) {
+        long current = id;
+        while (current != ROOT_ID) {
+            if (current == ancestorId) {
+                return true;
+            }
+            Cursor cursor = db.rawQuery("SELECT parent_id FROM bookmarks WHERE _id = ?",
+                    new String[] {Long.toString(current)});
+            try {
+                current = cursor.moveToFirst() ? cursor.getLong(0) : ROOT_ID;
+            } finally {
+                cursor.close();
+            }
+        }
+        return false;
+    }
+
+    private static void readInto(Cursor cursor, List<Bookmark> out) {
+        try {
+            while (cursor.moveToNext()) {
+                out.add(new Bookmark(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2) != 0,
+                        cursor.getString(3), cursor.getString(4), cursor.getInt(5),
+                        cursor.getLong(6), cursor.getLong(7)));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Writer thread: moves the old SharedPreferences bookmarks to the top level once,
+    // sorted by title since the preferences kept no order
+    private void migrateLegacyPrefs() {
+        SharedPreferences legacy = context.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE);
+        Map<String, ?> old = legacy.getAll();
+        if (old.isEmpty()) {
+            return;
+        }
+        List<String[]> entries = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : old.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() instanceof String) {
+                String title = (String) entry.getValue();
+                entries.add(new String[] {title.isEmpty() ? entry.getKey() : title, entry.getKey()});
+            }
+        }
+        Collections.sort(entries, (a, b) -> a[0].compareToIgnoreCase(b[0]));
+        SQLiteDatabase db = database.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long now = System.currentTimeMillis();
+            for (String[] entry : entries) {
+                insert(db, ROOT_ID, false, entry[0], entry[1], now);
+            }
+            db.setTransactionSuccessful();
+        } catch (Exception e) {
+            Log.e("Bookmarks", "Error migrating bookmarks: " + e.getMessage(), e);
+            return;
+        } finally {
+            db.endTransaction();
+        }
+        legacy.edit().clear().commit();
+        Log.d("Bookmarks", "Migrated " + entries.size() + " bookmarks from preferences");
+    }
+}
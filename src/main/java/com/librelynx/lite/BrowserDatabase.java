@@ -0,0 +1,198 @@
+package com.librelynx.lite;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.database.sqlite.SQLiteOpenHelper;
+
+// SQLite schema for browsing data. One instance per process, see get().
+final class BrowserDatabase extends SQLiteOpenHelper {
+
+    private static final String NAME = "librelynx.db";
+    private static final int VERSION = 6;
+
+    private static BrowserDatabase instance;
+
+    static synchronized BrowserDatabase get(Context context) {
+        if (instance == null) {
+            instance = new BrowserDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private BrowserDatabase(Context context) {
+        super(context, NAME, null, VERSION);
+        // Readers (dialogs) never wait for the history writer
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Append-only visit log, one row per page load
+        db.execSQL("CREATE TABLE visits ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "url TEXT NOT NULL, "
+                + "title TEXT, "
+                + "visited_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX visits_url ON visits(url)");
+        db.execSQL("CREATE INDEX visits_visited_at ON visits(visited_at)");
+        createUrls(db);
+        addFrecencyKey(db);
+        createBookmarks(db);
+        createSearchIndex(db, "urls");
+        createSearchIndex(db, "bookmarks");
+        createOfflinePages(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createUrls(db);
+            rebuildUrls(db);
+        }
+        if (oldVersion < 3) {
+            createBookmarks(db);
+        }
+        if (oldVersion < 4) {
+            createSearchIndex(db, "urls");
+            createSearchIndex(db, "bookmarks");
+            db.execSQL("INSERT INTO urls_fts(urls_fts) VALUES ('rebuild')");
+            db.execSQL("INSERT INTO bookmarks_fts(bookmarks_fts) VALUES ('rebuild')");
+        }
+        if (oldVersion < 5) {
+            createOfflinePages(db);
+        }
+        if (oldVersion < 6) {
+            addFrecencyKey(db);
+            fillFrecencyKeys(db);
+        }
+    }
+
+    // Fixed-point copy of frecency that history is ordered and paged by, see
+    // HistoryStore. Replaces the index on the REAL column.
+    private static void addFrecencyKey(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE urls ADD COLUMN frecency_key INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("DROP INDEX IF EXISTS urls_frecency");
+        db.execSQL("CREATE INDEX urls_frecency_key ON urls(frecency_key DESC, _id)");
+    }
+
+    // Computed in Java so the keys round exactly like Frecency.key
+    private static void fillFrecencyKeys(SQLiteDatabase db) {
+        SQLiteStatement update = db.compileStatement("UPDATE urls SET frecency_key = ? WHERE _id = ?");
+        Cursor cursor = db.rawQuery("SELECT _id, frecency FROM urls", null);
+        try {
+            while (cursor.moveToNext()) {
+                update.bindLong(1, Frecency.key(cursor.getDouble(1)));
+                update.bindLong(2, cursor.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            cursor.close();
+            update.close();
+        }
+    }
+
+    // External-content FTS4 index over the table's title and url, kept in sync by
+    // triggers. Only title and url changes reindex a row, so visit count and
+    // position updates cost nothing extra. prefix= speeds up the short prefix
+    // terms typed first.
+    private static void createSearchIndex(SQLiteDatabase db, String table) {
+        String fts = table + "_fts";
+        String changed = " WHEN old.title IS NOT new.title OR old.url IS NOT new.url";
+        db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(content=\"" + table + "\", title, url, prefix=\"2,3\")");
+        db.execSQL("CREATE TRIGGER " + fts + "_ai AFTER INSERT ON " + table + " BEGIN "
+                + "INSERT INTO " + fts + "(docid, title, url) VALUES (new._id, new.title, new.url); END");
+        db.execSQL("CREATE TRIGGER " + fts + "_bd BEFORE DELETE ON " + table + " BEGIN "
+                + "DELETE FROM " + fts + " WHERE docid = old._id; END");
+        db.execSQL("CREATE TRIGGER " + fts + "_bu BEFORE UPDATE OF title, url ON " + table + changed + " BEGIN "
+                + "DELETE FROM " + fts + " WHERE docid = old._id; END");
+        db.execSQL("CREATE TRIGGER " + fts + "_au AFTER UPDATE OF title, url ON " + table + changed + " BEGIN "
+                + "INSERT INTO " + fts + "(docid, title, url) VALUES (new._id, new.title, new.url); END");
+    }
+
+    // Bookmarks and folders; parent_id 0 is the top level
+    private static void createBookmarks(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE bookmarks ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "parent_id INTEGER NOT NULL DEFAULT 0, "
+                + "is_folder INTEGER NOT NULL DEFAULT 0, "
+                + "title TEXT NOT NULL, "
+                + "url TEXT, "
+                + "position INTEGER NOT NULL, "
+                + "created_at INTEGER NOT NULL, "
+                + "updated_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX bookmarks_parent_position ON bookmarks(parent_id, position)");
+        db.execSQL("CREATE INDEX bookmarks_url ON bookmarks(url)");
+    }
+
+    // Saved web archives, see OfflineStore; the file is named after _id
+    private static void createOfflinePages(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE offline_pages ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "url TEXT NOT NULL UNIQUE, "
+                + "title TEXT, "
+                + "size INTEGER NOT NULL, "
+                + "saved_at INTEGER NOT NULL, "
+                + "last_used INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX offline_pages_last_used ON offline_pages(last_used)");
+    }
+
+    // One row per URL with its aggregate visit data, see HistoryStore for frecency
+    private static void createUrls(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE urls ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "url TEXT NOT NULL UNIQUE, "
+                + "title TEXT, "
+                + "visit_count INTEGER NOT NULL, "
+                + "last_visit INTEGER NOT NULL, "
+                + "frecency REAL NOT NULL)");
+        db.execSQL("CREATE INDEX urls_frecency ON urls(frecency DESC, _id)");
+        db.execSQL("CREATE INDEX urls_last_visit ON urls(last_visit)");
+    }
+
+    // Recomputes urls from the visit log (SQLite has no exp/ln, so this runs in Java)
+    private static void rebuildUrls(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM urls");
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO urls (url, title, visit_count, last_visit, frecency) VALUES (?, ?, ?, ?, ?)");
+        Cursor cursor = db.rawQuery("SELECT url, title, visited_at FROM visits ORDER BY url, visited_at", null);
+        try {
+            String url = null;
+            String title = null;
+            int count = 0;
+            long last = 0;
+            double frecency = 0;
+            while (cursor.moveToNext()) {
+                String rowUrl = cursor.getString(0);
+                if (!rowUrl.equals(url)) {
+                    if (url != null) {
+                        insertUrl(insert, url, title, count, last, frecency);
+                    }
+                    url = rowUrl;
+                    count = 0;
+                    frecency = Double.NEGATIVE_INFINITY;
+                }
+                title = cursor.getString(1);
+                last = cursor.getLong(2);
+                frecency = Frecency.logAddExp(frecency, Frecency.visitScore(last));
+                count++;
+            }
+            if (url != null) {
+                insertUrl(insert, url, title, count, last, frecency);
+            }
+        } finally {
+            cursor.close();
+            insert.close();
+        }
+    }
+
+    private static void insertUrl(SQLiteStatement insert, String url, String title, int count, long last, double frecency) {
+        insert.bindString(1, url);
+        insert.bindString(2, title != null ? title : url);
+        insert.bindLong(3, count);
+        insert.bindLong(4, last);
+        insert.bindDouble(5, frecency);
+        insert.executeInsert();
+    }
+}
@@ -0,0 +1,205 @@
+package com.librelynx.lite;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+
+// One tab. A tab is either live, with a WebView and a renderer, or hibernated:
+// its WebView destroyed and only the back/forward state kept in a Bundle. Title
+// and URL are remembered as they change, and the back/forward state each time the
+// session saves it, so tab lists can show hibernated tabs without waking them and
+// a tab whose renderer died keeps its place. Blocking stats and the navigation tracker belong to the
+// tab, so they survive hibernation. Tabs restored from the saved session start
+// out hibernated, with their state still on disk (see SessionStore). Live tabs
+// that are not on screen are paused and give up renderer priority. Main thread
+// only, except isVisible(); see TabManager.
+final class BrowserTab {
+
+    final long id; // stable for the tab's lifetime and across restarts
+    final BlockingStats stats = new BlockingStats();
+    final NavigationTracker navigation;
+
+    private WebView webView;
+    private Bundle savedState;
+    private Bundle lastState; // of the live WebView, as the session last saved it
+    private String lastStateUrl; // the page lastState was saved on
+    private String title;
+    private String url;
+    long lastUsed; // TabManager's LRU clock
+    CosmeticScripts cosmetics; // of the live WebView, null if unsupported or hibernated
+
+    private boolean stateOnDisk;
+    private volatile boolean visible = true; // read from WebView IO threads
+
+    // WebViews handed to tabs and not destroyed yet, to check that closing or
+    // hibernating a tab always releases its WebView (see TabManager)
+    private static int liveWebViews;
+
+    BrowserTab(long id, NavigationTracker navigation) {
+        this.id = id;
+        this.navigation = navigation;
+    }
+
+    static int liveWebViews() {
+        return liveWebViews;
+    }
+
+    // Placeholder for a tab of the saved session, woken when first switched to
+    static BrowserTab restored(long id, NavigationTracker navigation, String title, String url) {
+        BrowserTab tab = new BrowserTab(id, navigation);
+        tab.title = title;
+        tab.url = url;
+        tab.stateOnDisk = true;
+        return tab;
+    }
+
+    boolean isLive() {
+        return webView != null;
+    }
+
+    // Null while hibernated
+    WebView webView() {
+        return webView;
+    }
+
+    String title() {
+        if (webView != null && webView.getTitle() != null) {
+            return webView.getTitle();
+        }
+        return title;
+    }
+
+    String url() {
+        if (webView != null && webView.getUrl() != null) {
+            return webView.getUrl();
+        }
+        return url;
+    }
+
+    // From onReceivedTitle and doUpdateVisitedHistory, while the renderer is alive
+    void onTitleChanged(String title) {
+        if (title != null) {
+            this.title = title;
+        }
+    }
+
+    void onUrlChanged(String url) {
+        if (url != null) {
+            this.url = url;
+        }
+    }
+
+    boolean isVisible() {
+        return visible;
+    }
+
+    // onPause marks the page hidden, so Blink stops animation frames and throttles
+    // its timers, and media and geolocation stop. A hidden tab also waives its
+    // claim on the shared renderer's priority, which then follows the tab on screen.
+    void setVisible(boolean visible) {
+        boolean changed = this.visible != visible;
+        this.visible = visible;
+        if (webView == null || !changed) {
+            return;
+        }
+        if (visible) {
+            webView.onResume();
+        } else {
+            webView.onPause();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            webView.setRendererPriorityPolicy(
+                    visible ? WebView.RENDERER_PRIORITY_IMPORTANT : WebView.RENDERER_PRIORITY_WAIVED, true);
+        }
+    }
+
+    // True until a restored tab has been woken; its state is then read from disk
+    boolean needsSessionState() {
+        return stateOnDisk;
+    }
+
+    void setSessionState(Bundle state) {
+        savedState = state;
+        stateOnDisk = false;
+    }
+
+    // Back/forward state for the session: fresh from the WebView if live, else
+    // what hibernation saved. Null if there is nothing to save.
+    Bundle saveState() {
+        if (webView == null) {
+            return savedState;
+        }
+        Bundle state = new Bundle();
+        if (webView.saveState(state) == null) {
+            return null;
+        }
+        lastState = state;
+        lastStateUrl = webView.getUrl();
+        return state;
+    }
+
+    // Attaches a fresh WebView and restores the saved back/forward list into it,
+    // or loads the last URL when there is no usable state
+    void wake(WebView freshWebView) {
+        webView = freshWebView;
+        liveWebViews++;
+        if (cosmetics != null) {
+            cosmetics.prepare(url);
+        }
+        boolean restored = savedState != null && webView.restoreState(savedState) != null;
+        savedState = null;
+        if (!restored && url != null) {
+            webView.loadUrl(url);
+        }
+    }
+
+    // Saves state and destroys the WebView. The next wake() reloads the page, since
+    // WebView state holds the history list but not the rendered document.
+    void hibernate() {
+        if (webView == null) {
+            return;
+        }
+        navigation.commitNow();
+        title = webView.getTitle();
+        url = webView.getUrl();
+        savedState = saveState();
+        destroyWebView();
+    }
+
+    // The renderer behind the WebView died. The WebView may only be removed and
+    // destroyed now, so the tab keeps the title, URL and back/forward state recorded
+    // while it was alive, and reloads from them when it is next woken.
+    void onRendererGone() {
+        if (webView == null) {
+            return;
+        }
+        navigation.commitNow();
+        // State saved before the last navigation would reopen the wrong page; then
+        // only the URL is reloaded
+        savedState = url != null && url.equals(lastStateUrl) ? lastState : null;
+        release();
+    }
+
+    // Drops the WebView for good, e.g. when the tab is closed
+    void destroyWebView() {
+        if (webView == null) {
+            return;
+        }
+        webView.stopLoading();
+        release();
+    }
+
+    private void release() {
+        RendererProbe.released(webView);
+        if (webView.getParent() instanceof ViewGroup) {
+            ((ViewGroup) webView.getParent()).removeView(webView);
+        }
+        webView.destroy();
+        webView = null;
+        lastState = null;
+        lastStateUrl = null;
+        cosmetics = null;
+        liveWebViews--;
+    }
+}
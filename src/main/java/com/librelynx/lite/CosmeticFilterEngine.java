@@ -0,0 +1,317 @@
+package com.librelynx.lite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Element-hiding rules in EasyList "##" syntax, indexed by domain.
+//
+//   ##.ad-banner                    generic, every site
+//   example.com,example.org##.promo only on those domains and their subdomains
+//   ~example.com##.ad-banner        generic except on example.com
+//   example.com#@#.ad-banner        exception, unhide on example.com
+//
+// Lookup walks the host's parent domains and does one hash probe per label. The CSS
+// and the escaped injection script are built once per distinct set of matching
+// domain entries and cached, so most page loads reuse a ready-made string.
+// Extended syntaxes (#?#, #$#, scriptlets) and network rules are ignored.
+final class CosmeticFilterEngine {
+
+    private static final int MAX_CACHED_SCRIPTS = 64;
+
+    private static final class DomainRules {
+        final List<String> hide = new ArrayList<>();
+        final Set<String> unhide = new HashSet<>();
+    }
+
+    private final List<String> generic;
+    private final Map<String, DomainRules> byDomain;
+    private final int ruleCount;
+
+    private final Map<String, String> styleCache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_SCRIPTS;
+        }
+    };
+    private final Map<String, String> scriptCache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_SCRIPTS;
+        }
+    };
+
+    private CosmeticFilterEngine(List<String> generic, Map<String, DomainRules> byDomain, int ruleCount) {
+        this.generic = generic;
+        this.byDomain = byDomain;
+        this.ruleCount = ruleCount;
+    }
+
+    static final class Builder {
+        private final List<String> generic = new ArrayList<>();
+        private final Set<String> genericSeen = new HashSet<>();
+        private final Map<String, DomainRules> byDomain = new HashMap<>();
+        private int ruleCount;
+
+        Builder addRules(Iterable<String> lines) {
+            for (String line : lines) {
+                addRule(line);
+            }
+            return this;
+        }
+
+        Builder addRules(String[] lines) {
+            for (String line : lines) {
+                addRule(line);
+            }
+            return this;
+        }
+
+        // Returns false if the line is not a supported element-hiding rule
+        boolean addRule(String line) {
+            if (line == null) {
+                return false;
+            }
+            String rule = line.trim();
+            if (rule.isEmpty() || rule.charAt(0) == '!' || rule.charAt(0) == '[') {
+                return false;
+            }
+            boolean exception = false;
+            int separator = rule.indexOf("#@#");
+            if (separator >= 0) {
+                exception = true;
+            } else {
+                separator = rule.indexOf("##");
+            }
+            if (separator < 0) {
+                return false;
+            }
+            String selector = rule.substring(separator + (exception ? 3 : 2)).trim();
+            if (!isSafeSelector(selector)) {
+                return false;
+            }
+            String domains = rule.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+
+            if (domains.isEmpty()) {
+                if (exception) {
+                    return false; // generic exceptions are not supported
+                }
+                if (genericSeen.add(selector)) {
+                    generic.add(selector);
+                }
+                ruleCount++;
+                return true;
+            }
+
+            boolean anyIncluded = false;
+            List<String> excluded = new ArrayList<>();
+            for (String domain : domains.split(",")) {
+                domain = domain.trim();
+                if (domain.isEmpty()) {
+                    continue;
+                }
+                if (domain.charAt(0) == '~') {
+                    excluded.add(domain.substring(1));
+                    continue;
+                }
+                DomainRules rules = rulesFor(domain);
+                if (exception) {
+                    rules.unhide.add(selector);
+                } else {
+                    rules.hide.add(selector);
+                }
+                anyIncluded = true;
+            }
+            // "~a.com##x" is generic except on a.com; "b.com,~a.b.com##x" is scoped to b.com
+            if (!exception) {
+                if (!anyIncluded && genericSeen.add(selector)) {
+                    generic.add(selector);
+                }
+                for (String domain : excluded) {
+                    rulesFor(domain).unhide.add(selector);
+                }
+            }
+            ruleCount++;
+            return true;
+        }
+
+        private DomainRules rulesFor(String domain) {
+            DomainRules rules = byDomain.get(domain);
+            if (rules == null) {
+                rules = new DomainRules();
+                byDomain.put(domain, rules);
+            }
+            return rules;
+        }
+
+        CosmeticFilterEngine build() {
+            return new CosmeticFilterEngine(Collections.unmodifiableList(new ArrayList<>(generic)),
+                    new HashMap<>(byDomain), ruleCount);
+        }
+    }
+
+    int size() {
+        return ruleCount;
+    }
+
+    // CSS hiding every matched element on the host, or null if nothing applies
+    String styleFor(String host) {
+        String key = signature(host);
+        synchronized (styleCache) {
+            String cached = styleCache.get(key);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached;
+            }
+        }
+        String css = buildCss(key);
+        synchronized (styleCache) {
+            styleCache.put(key, css);
+        }
+        return css.isEmpty() ? null : css;
+    }
+
+    // True if the host has rules of its own beyond the generic ones
+    boolean hasSiteRules(String host) {
+        return !signature(host).isEmpty();
+    }
+
+    // Self-contained script that installs the host's full CSS, replacing the generic
+    // styles if they are already in place, or null if no rules apply
+    String injectionScriptFor(String host) {
+        String key = signature(host);
+        synchronized (scriptCache) {
+            String cached = scriptCache.get(key);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached;
+            }
+        }
+        String css = styleFor(host);
+        String script = css == null ? "" : buildInjectionScript(css);
+        synchronized (scriptCache) {
+            scriptCache.put(key, script);
+        }
+        return script.isEmpty() ? null : script;
+    }
+
+    static String buildInjectionScript(String css) {
+        return "(function(){" +
+            "try {" +
+                "var style = document.getElementById('librelynx-style');" +
+                "if (!style) {" +
+                    "style = document.createElement('style');" +
+                    "style.id = 'librelynx-style';" +
+                    "(document.head || document.documentElement).appendChild(style);" +
+                "}" +
+                "style.textContent = '" + escapeForJs(css) + "';" +
+                "return 'success';" +
+            "} catch(e) {" +
+                "return 'error: ' + e.message;" +
+            "}" +
+            "})()";
+    }
+
+    // The generic styles for every frame. Site scripts may run first and already
+    // hold the generic rules, so this one never replaces an existing style element.
+    static String buildGenericScript(String css) {
+        return "(function(){" +
+            "try {" +
+                "if (document.getElementById('librelynx-style')) return;" +
+                "var style = document.createElement('style');" +
+                "style.id = 'librelynx-style';" +
+                "style.textContent = '" + escapeForJs(css) + "';" +
+                "(document.head || document.documentElement).appendChild(style);" +
+            "} catch(e) {}" +
+            "})();";
+    }
+
+    static String escapeForJs(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\'': out.append("\\'"); break;
+                case '"': out.append("\\\""); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': break;
+                case '<': out.append("\\x3c"); break;
+                case '\u2028': out.append("\\u2028"); break;
+                case '\u2029': out.append("\\u2029"); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    // Matching domain keys for the host, e.g. "mojeek.com" for "www.mojeek.com".
+    // Hosts with the same signature get the same CSS, so it doubles as the cache key.
+    private String signature(String host) {
+        if (host == null || host.isEmpty() || byDomain.isEmpty()) {
+            return "";
+        }
+        StringBuilder key = null;
+        int from = 0;
+        while (from < host.length()) {
+            String suffix = from == 0 ? host : host.substring(from);
+            if (byDomain.containsKey(suffix)) {
+                if (key == null) {
+                    key = new StringBuilder(suffix);
+                } else {
+                    key.append(',').append(suffix);
+                }
+            }
+            int dot = host.indexOf('.', from);
+            if (dot < 0) {
+                break;
+            }
+            from = dot + 1;
+        }
+        return key == null ? "" : key.toString();
+    }
+
+    private String buildCss(String signature) {
+        List<String> hide = new ArrayList<>();
+        Set<String> unhide = new HashSet<>();
+        if (!signature.isEmpty()) {
+            for (String domain : signature.split(",")) {
+                DomainRules rules = byDomain.get(domain);
+                hide.addAll(rules.hide);
+                unhide.addAll(rules.unhide);
+            }
+        }
+        StringBuilder css = new StringBuilder();
+        Set<String> emitted = new HashSet<>();
+        appendRules(css, generic, unhide, emitted);
+        appendRules(css, hide, unhide, emitted);
+        return css.toString();
+    }
+
+    // One rule per selector so an invalid selector only drops itself
+    private static void appendRules(StringBuilder css, List<String> selectors, Set<String> unhide, Set<String> emitted) {
+        for (String selector : selectors) {
+            if (!unhide.contains(selector) && emitted.add(selector)) {
+                css.append(selector).append(" { display: none !important; }\n");
+            }
+        }
+    }
+
+    // Rejects anything that could close the rule and inject arbitrary CSS
+    private static boolean isSafeSelector(String selector) {
+        if (selector.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < selector.length(); i++) {
+            char c = selector.charAt(i);
+            if (c == '{' || c == '}' || c == ';' || c == '<' || c == '\\' || c < ' ') {
+                return false;
+            }
+        }
+        return !selector.startsWith("+js(") && !selector.contains(":style(");
+    }
+}
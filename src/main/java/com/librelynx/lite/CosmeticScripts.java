@@ -0,0 +1,97 @@
+package com.librelynx.lite;
+
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebView;
+import androidx.webkit.ScriptHandler;
+import androidx.webkit.WebViewCompat;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+// The cosmetic document-start scripts of one WebView, so styles are in place before
+// the page is first laid out.
+//
+// Two scripts are registered. The generic rules go to every origin and frame; they
+// are the same for all sites, so this script only changes when new lists are
+// published. The site's own rules are a second script scoped to the origin about
+// to be loaded, swapped by prepare() before each top-level navigation. Both carry
+// their CSS inline: the page gets a style element and nothing else, and no frame
+// can call into the app or ask for another site's rules.
+//
+// Main thread only.
+final class CosmeticScripts {
+
+    private final WebView webView;
+    private final BlocklistManager blocklists;
+
+    private ScriptHandler generic;
+    private int genericGeneration = -1;
+    private ScriptHandler site;
+    private String siteHost; // host the site script was prepared for, null before the first
+
+    CosmeticScripts(WebView webView, BlocklistManager blocklists) {
+        this.webView = webView;
+        this.blocklists = blocklists;
+    }
+
+    // Registers the scripts for a top-level load of url. Returns false if they had
+    // to change, in which case a document that is already loading missed them.
+    boolean prepare(String url) {
+        String host = url != null ? UrlHosts.host(url) : "";
+        BlocklistManager.Snapshot snapshot = blocklists.current();
+        boolean changed = false;
+        try {
+            if (snapshot.generation != genericGeneration) {
+                if (generic != null) {
+                    generic.remove();
+                    generic = null;
+                }
+                String css = snapshot.cosmetic.styleFor(null);
+                if (css != null) {
+                    generic = WebViewCompat.addDocumentStartJavaScript(webView,
+                            CosmeticFilterEngine.buildGenericScript(css), Collections.singleton("*"));
+                }
+                genericGeneration = snapshot.generation;
+                siteHost = null; // site rules may have changed with the lists
+                changed = true;
+            }
+            if (host.equals(siteHost)) {
+                return !changed;
+            }
+            if (site != null) {
+                site.remove();
+                site = null;
+            }
+            siteHost = host;
+            Set<String> origins = url != null ? originRules(url) : Collections.<String>emptySet();
+            if (!origins.isEmpty() && snapshot.cosmetic.hasSiteRules(host)) {
+                site = WebViewCompat.addDocumentStartJavaScript(webView,
+                        snapshot.cosmetic.injectionScriptFor(host), origins);
+                changed = true;
+            }
+        } catch (Exception e) {
+            Log.e("CosmeticScripts", "Error in prepare: " + e.getMessage(), e);
+        }
+        return !changed;
+    }
+
+    // http and https origins of the URL's host, or the exact origin if it names a
+    // port. Empty for other schemes, which have no cosmetic rules.
+    private static Set<String> originRules(String url) {
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        Set<String> origins = new HashSet<>();
+        if (host == null || host.isEmpty() || !("http".equals(scheme) || "https".equals(scheme))) {
+            return origins;
+        }
+        if (uri.getPort() != -1) {
+            origins.add(scheme + "://" + host + ":" + uri.getPort());
+        } else {
+            origins.add("http://" + host);
+            origins.add("https://" + host);
+        }
+        return origins;
+    }
+}
@@ -0,0 +1,53 @@
+package com.librelynx.lite;
+
+// Shared pieces of bookmark and history import/export (see NetscapeBookmarks,
+// HistoryJsonLines and the import/export methods of the stores).
+//
+// Transfers stream: files are parsed or written one entry at a time on the
+// store's writer thread and committed every BATCH_SIZE rows, so memory does not
+// grow with the file and the UI sees progress after each batch. Imports skip
+// URLs the store already has, checked against a set of 64-bit URL fingerprints
+// loaded once up front rather than a lookup per entry.
+final class DataTransfer {
+
+    static final int BATCH_SIZE = 500;
+
+    // Called on the main thread after each committed batch
+    interface Progress {
+        void onProgress(int processed);
+    }
+
+    // Delivered on the main thread when a transfer ends
+    static final class Result {
+        final int processed; // entries read from the file, or written to it
+        final int added;
+        final int skipped; // duplicates and unusable entries
+        final String error; // null on success
+
+        Result(int processed, int added, int skipped, String error) {
+            this.processed = processed;
+            this.added = added;
+            this.skipped = skipped;
+            this.error = error;
+        }
+    }
+
+    private DataTransfer() {
+    }
+
+    // FNV-1a over the UTF-16 units; 64 bits keep collisions negligible at a million URLs
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Only web pages can be opened again; skips place:, javascript: and the like
+    static boolean isImportableUrl(String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://")
+                || url.startsWith("file://") || url.startsWith("ftp://"));
+    }
+}
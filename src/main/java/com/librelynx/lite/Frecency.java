@@ -0,0 +1,36 @@
+package com.librelynx.lite;
+
+// Scores shared by history and suggestions. A page's frecency is the logarithm of
+// a sum of exponentially decaying visit scores, exp(λ(t - T0)) per visit with a
+// 30 day half-life (see HistoryStore). Plain Java, so the benchmarks can use it.
+final class Frecency {
+
+    private static final long EPOCH = 1577836800000L; // 2020-01-01
+    private static final double HALF_LIFE_MS = 30.0 * 24 * 60 * 60 * 1000;
+    private static final double DECAY = Math.log(2) / HALF_LIFE_MS;
+    private static final double KEY_SCALE = 1 << 20;
+
+    private Frecency() {}
+
+    // log(exp(λ(t - T0))), the log-space score of a single visit at time t
+    static double visitScore(long time) {
+        return DECAY * (time - EPOCH);
+    }
+
+    // Frecency in fixed point, about six decimal places
+    static long key(double frecency) {
+        return Math.round(frecency * KEY_SCALE);
+    }
+
+    // log(exp(a) + exp(b)) without overflow
+    static double logAddExp(double a, double b) {
+        if (a == Double.NEGATIVE_INFINITY) {
+            return b;
+        }
+        if (b == Double.NEGATIVE_INFINITY) {
+            return a;
+        }
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(-Math.abs(a - b)));
+    }
+}
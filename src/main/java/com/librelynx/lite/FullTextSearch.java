@@ -0,0 +1,101 @@
+package com.librelynx.lite;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Query building and ranking for the FTS4 indexes on history and bookmarks
+// (urls_fts, bookmarks_fts, see BrowserDatabase).
+//
+// Every word typed becomes a prefix term, so results narrow while typing and
+// "gith" finds github.com. Relevance is computed from matchinfo('pcnx'): each
+// matched term contributes its column weight times a BM25-style idf and a
+// saturating term frequency, so rare words count more than "com" or "www".
+final class FullTextSearch {
+
+    private static final int MAX_TERMS = 8;
+    private static final double TERM_SATURATION = 1.2;
+
+    private FullTextSearch() {
+    }
+
+    // FTS MATCH expression requiring every word as a prefix, or null if the
+    // text has no searchable words
+    static String matchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        int terms = 0;
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            // Only letters and digits remain, so nothing needs quoting; lowercase
+            // keeps AND/OR/NOT from being read as operators
+            appendAsciiLower(query, word);
+            query.append('*');
+            if (++terms == MAX_TERMS) {
+                break;
+            }
+        }
+        return terms == 0 ? null : query.toString();
+    }
+
+    // The default tokenizer folds ASCII case only, so other letters are kept as typed
+    private static void appendAsciiLower(StringBuilder out, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+
+    // Relevance of one row from its matchinfo(table, 'pcnx') blob; columnWeights
+    // is indexed like the FTS columns
+    static double relevance(byte[] matchinfo, double[] columnWeights) {
+        if (matchinfo == null || matchinfo.length < 12) {
+            return 0;
+        }
+        IntBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        long rows = info.get(2) & 0xffffffffL;
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns && column < columnWeights.length; column++) {
+                int base = 3 + 3 * (phrase * columns + column);
+                if (base + 2 >= info.limit()) {
+                    return score;
+                }
+                int hits = info.get(base);
+                if (hits == 0) {
+                    continue;
+                }
+                long docsWithHits = info.get(base + 2) & 0xffffffffL;
+                double idf = Math.log((rows - docsWithHits + 0.5) / (docsWithHits + 0.5) + 1);
+                score += columnWeights[column] * idf * hits / (hits + TERM_SATURATION);
+            }
+        }
+        return score;
+    }
+
+    // The items with the highest scores, best first
+    static <T> List<T> topByScore(List<T> items, List<Double> scores, int limit) {
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        List<T> top = new ArrayList<>(Math.min(limit, order.length));
+        for (int i = 0; i < order.length && i < limit; i++) {
+            top.add(items.get(order[i]));
+        }
+        return top;
+    }
+}
@@ -0,0 +1,105 @@
+package com.librelynx.lite;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+// History as JSON lines, one object per URL:
+//
+//   {"url":"https://example.com/","title":"Example","visit_count":3,"last_visit":1690000000000}
+//
+// Lines are read and written one at a time, so files of any length stream with
+// constant memory, and a malformed line is skipped without losing the rest.
+// Unknown fields are ignored so other tools can add their own.
+final class HistoryJsonLines {
+
+    interface Visitor {
+        // visitCount is at least 1; lastVisit in milliseconds, 0 if missing
+        void onEntry(String url, String title, int visitCount, long lastVisit) throws IOException;
+    }
+
+    private HistoryJsonLines() {
+    }
+
+    // Returns the number of lines that could not be parsed
+    static int read(BufferedReader in, Visitor visitor) throws IOException {
+        int malformed = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String url = null;
+            String title = null;
+            int visitCount = 1;
+            long lastVisit = 0;
+            try (JsonReader reader = new JsonReader(new StringReader(line))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    switch (name) {
+                        case "url":
+                            url = reader.nextString();
+                            break;
+                        case "title":
+                            title = reader.nextString();
+                            break;
+                        case "visit_count":
+                            visitCount = Math.max(1, reader.nextInt());
+                            break;
+                        case "last_visit":
+                            lastVisit = reader.nextLong();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                malformed++;
+                continue;
+            }
+            if (url == null) {
+                malformed++;
+                continue;
+            }
+            visitor.onEntry(url, title, visitCount, lastVisit);
+        }
+        return malformed;
+    }
+
+    // Writes entries one line each; the caller flushes and closes the writer
+    static final class Output {
+        private final Writer out;
+        private final StringWriter line = new StringWriter();
+
+        Output(Writer out) {
+            this.out = out;
+        }
+
+        void entry(String url, String title, int visitCount, long lastVisit) throws IOException {
+            line.getBuffer().setLength(0);
+            JsonWriter writer = new JsonWriter(line);
+            writer.beginObject();
+            writer.name("url").value(url);
+            if (title != null && !title.equals(url)) {
+                writer.name("title").value(title);
+            }
+            writer.name("visit_count").value(visitCount);
+            writer.name("last_visit").value(lastVisit);
+            writer.endObject();
+            writer.close();
+            out.write(line.toString());
+            out.write('\n');
+        }
+    }
+}
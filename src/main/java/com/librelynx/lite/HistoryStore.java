@@ -0,0 +1,573 @@
+package com.librelynx.lite;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Browsing history backed by an append-only SQLite visit log.
+//
+// Page loads only append to an in-memory batch on the UI thread. A background
+// writer thread commits the batch in a single transaction a moment later (or as
+// soon as it fills up), so the cost of a visit no longer grows with history size.
+// Queries run on the same thread after pending writes, so they always see them,
+// and deliver their results on the main thread.
+//
+// Each visit also updates its row in the urls table (visit count, last visit and
+// frecency) through the unique URL index, so recording a visit is one indexed
+// lookup and one row write however large history grows. History is read page by page in frecency order
+// using keyset pagination, never materialized as a whole.
+//
+// Frecency is a sum of exponentially decaying visit scores, exp(λ(t - T0)) per
+// visit with a 30 day half-life. All scores decay at the same rate, so the stored
+// sum never needs refreshing to stay correctly ordered; it is kept as a logarithm
+// so it cannot overflow. Ordering and paging use frecency_key, the same value in
+// fixed point: an integer survives being bound as a query argument exactly, so
+// the page boundary compares equal to the row it came from and ties page by _id.
+final class HistoryStore {
+
+    static final class Entry {
+        final long id;
+        final String url;
+        final String title;
+        final int visitCount;
+        final long lastVisit;
+        final double frecency;
+        final long frecencyKey;
+
+        Entry(long id, String url, String title, int visitCount, long lastVisit, double frecency, long frecencyKey) {
+            this.id = id;
+            this.url = url;
+            this.title = title;
+            this.visitCount = visitCount;
+            this.lastVisit = lastVisit;
+            this.frecency = frecency;
+            this.frecencyKey = frecencyKey;
+        }
+    }
+
+    // One page of entries in frecency order; pass it to queryPage to get the next one
+    static final class Page {
+        final List<Entry> entries;
+        final boolean hasMore;
+
+        Page(List<Entry> entries, boolean hasMore) {
+            this.entries = entries;
+            this.hasMore = hasMore;
+        }
+
+        Entry last() {
+            return entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        }
+    }
+
+    private static final class Visit {
+        final String url;
+        String title; // may be replaced by a later title update while pending
+        final long time;
+        final boolean titleOnly; // renames the latest visit instead of adding one
+
+        Visit(String url, String title, long time, boolean titleOnly) {
+            this.url = url;
+            this.title = title;
+            this.time = time;
+            this.titleOnly = titleOnly;
+        }
+    }
+
+    private static final String LEGACY_PREFS = "LibreLynxHistory";
+    private static final long FLUSH_DELAY_MS = 1500;
+    private static final int MAX_BATCH = 32;
+    private static final int COMPACT_EVERY = 500;
+    private static final int MAX_VISITS = 20000;
+    private static final int MAX_URLS = 100000;
+
+    private static final String ENTRY_COLUMNS = "_id, url, title, visit_count, last_visit, frecency, frecency_key";
+
+    // Full-text search ranks the most frecent matches by frecency plus relevance;
+    // a strong title match outweighs a few months of recency
+    private static final int SEARCH_CANDIDATES = 1000;
+    private static final double[] SEARCH_WEIGHTS = {2.0, 1.0}; // title, url
+
+    private static HistoryStore instance;
+
+    private final Context context;
+    private final BrowserDatabase database;
+    private final Handler writer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Visit> pending = new ArrayList<>(); // guarded by itself
+    private int insertsSinceCompaction; // writer thread only
+
+    private final Runnable flushTask = this::writePending;
+
+    static synchronized HistoryStore get(Context context) {
+        if (instance == null) {
+            instance = new HistoryStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private HistoryStore(Context context) {
+        this.context = context;
+        this.database = BrowserDatabase.get(context);
+        HandlerThread thread = new HandlerThread("history-writer", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        writer = new Handler(thread.getLooper());
+        writer.post(() -> {
+            migrateLegacyPrefs();
+            compact();
+        });
+    }
+
+    // Called once per visit NavigationTracker settles on; never touches the disk on the calling thread
+    void recordVisit(String url, String title) {
+        if (url == null || url.isEmpty() || url.equals("about:blank")) {
+            return;
+        }
+        enqueue(new Visit(url, title != null && !title.isEmpty() ? title : url, System.currentTimeMillis(), false));
+    }
+
+    // Sets the title of the most recent visit to url, e.g. once onReceivedTitle
+    // arrives. Folded into the pending visit when that has not been written yet.
+    void updateTitle(String url, String title) {
+        if (url == null || title == null || title.isEmpty()) {
+            return;
+        }
+        synchronized (pending) {
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                Visit visit = pending.get(i);
+                if (visit.url.equals(url)) {
+                    visit.title = title;
+                    return;
+                }
+            }
+        }
+        enqueue(new Visit(url, title, System.currentTimeMillis(), true));
+    }
+
+    private void enqueue(Visit visit) {
+        int size;
+        synchronized (pending) {
+            pending.add(visit);
+            size = pending.size();
+        }
+        if (size >= MAX_BATCH) {
+            writer.removeCallbacks(flushTask);
+            writer.post(flushTask);
+        } else if (size == 1) {
+            writer.postDelayed(flushTask, FLUSH_DELAY_MS);
+        }
+    }
+
+    // Commits pending visits now, e.g. when the app goes to the background
+    void flush() {
+        writer.removeCallbacks(flushTask);
+        writer.post(flushTask);
+    }
+
+    // Entries after `after` (null for the first page) by descending frecency,
+    // delivered on the main thread
+    void queryPage(Page after, int limit, ResultCallback<Page> callback) {
+        final Entry last = after != null ? after.last() : null;
+        writer.post(() -> {
+            writePending();
+            List<Entry> entries = new ArrayList<>();
+            Cursor cursor = null;
+            try {
+                String columns = "SELECT " + ENTRY_COLUMNS + " FROM urls ";
+                String order = " ORDER BY frecency_key DESC, _id LIMIT " + (limit + 1);
+                SQLiteDatabase db = database.getReadableDatabase();
+                if (last == null) {
+                    cursor = db.rawQuery(columns + order, null);
+                } else {
+                    String key = Long.toString(last.frecencyKey);
+                    cursor = db.rawQuery(columns + "WHERE frecency_key < ? OR (frecency_key = ? AND _id > ?)" + order,
+                            new String[] {key, key, Long.toString(last.id)});
+                }
+                while (cursor.moveToNext()) {
+                    entries.add(readEntry(cursor));
+                }
+            } catch (Exception e) {
+                Log.e("History", "Error querying history: " + e.getMessage(), e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            boolean hasMore = entries.size() > limit;
+            if (hasMore) {
+                entries.remove(limit);
+            }
+            Page page = new Page(entries, hasMore);
+            mainHandler.post(() -> callback.onResult(page));
+        });
+    }
+
+    // Entries whose title or URL contain every word of the text as a prefix, best
+    // first, delivered on the main thread
+    void search(String text, int limit, ResultCallback<List<Entry>> callback) {
+        final String match = FullTextSearch.matchQuery(text);
+        writer.post(() -> {
+            writePending();
+            final List<Entry> entries = new ArrayList<>();
+            List<Double> scores = new ArrayList<>();
+            Cursor cursor = null;
+            try {
+                if (match != null) {
+                    long started = System.currentTimeMillis();
+                    cursor = database.getReadableDatabase().rawQuery(
+                            "SELECT u._id, u.url, u.title, u.visit_count, u.last_visit, u.frecency, u.frecency_key, "
+                                    + "matchinfo(urls_fts, 'pcnx') FROM urls_fts JOIN urls u ON u._id = urls_fts.docid "
+                                    + "WHERE urls_fts MATCH ? ORDER BY u.frecency_key DESC LIMIT " + SEARCH_CANDIDATES,
+                            new String[] {match});
+                    while (cursor.moveToNext()) {
+                        Entry entry = readEntry(cursor);
+                        entries.add(entry);
+                        scores.add(entry.frecency + FullTextSearch.relevance(cursor.getBlob(7), SEARCH_WEIGHTS));
+                    }
+                    Log.d("History", "Search for '" + match + "' matched " + entries.size() + " in "
+                            + (System.currentTimeMillis() - started) + " ms");
+                }
+            } catch (Exception e) {
+                Log.e("History", "Error searching history: " + e.getMessage(), e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            List<Entry> ranked = FullTextSearch.topByScore(entries, scores, limit);
+            mainHandler.post(() -> callback.onResult(ranked));
+        });
+    }
+
+    // The highest-ranked URLs for building in-memory indexes. The callback runs on
+    // the writer thread so large results never pass through the main thread.
+    void readTop(int limit, ResultCallback<List<Entry>> callback) {
+        writer.post(() -> {
+            writePending();
+            List<Entry> entries = new ArrayList<>();
+            Cursor cursor = null;
+            try {
+                cursor = database.getReadableDatabase().rawQuery(
+                        "SELECT " + ENTRY_COLUMNS + " FROM urls ORDER BY frecency_key DESC LIMIT " + limit, null);
+                while (cursor.moveToNext()) {
+                    entries.add(readEntry(cursor));
+                }
+            } catch (Exception e) {
+                Log.e("History", "Error reading history: " + e.getMessage(), e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            callback.onResult(entries);
+        });
+    }
+
+    // The history entry of the URL, or null. The callback runs on the writer thread.
+    void find(String url, ResultCallback<Entry> callback) {
+        writer.post(() -> {
+            writePending();
+            Entry entry = null;
+            Cursor cursor = null;
+            try {
+                cursor = database.getReadableDatabase().rawQuery(
+                        "SELECT " + ENTRY_COLUMNS + " FROM urls WHERE url = ?", new String[] {url});
+                if (cursor.moveToFirst()) {
+                    entry = readEntry(cursor);
+                }
+            } catch (Exception e) {
+                Log.e("History", "Error reading history entry: " + e.getMessage(), e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            callback.onResult(entry);
+        });
+    }
+
+    void remove(String url) {
+        writer.post(() -> {
+            writePending();
+            try {
+                SQLiteDatabase db = database.getWritableDatabase();
+                db.delete("visits", "url = ?", new String[] {url});
+                db.delete("urls", "url = ?", new String[] {url});
+            } catch (Exception e) {
+                Log.e("History", "Error removing history entry: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    void clear() {
+        synchronized (pending) {
+            pending.clear();
+        }
+        writer.post(() -> {
+            try {
+                SQLiteDatabase db = database.getWritableDatabase();
+                db.delete("visits", null, null);
+                db.delete("urls", null, null);
+                insertsSinceCompaction = 0;
+            } catch (Exception e) {
+                Log.e("History", "Error clearing history: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // Streams a JSON-lines history file into urls and closes it. URLs already in
+    // history (or earlier in the file) are skipped. Imported entries rank as if all
+    // their visits happened at last_visit.
+    void importJsonLines(InputStream in, DataTransfer.Progress progress, ResultCallback<DataTransfer.Result> callback) {
+        writer.post(() -> {
+            writePending();
+            SQLiteDatabase db = database.getWritableDatabase();
+            Set<Long> known = new HashSet<>();
+            int[] counts = new int[3]; // processed, added, skipped
+            String error = null;
+            SQLiteStatement insertUrl = db.compileStatement(
+                    "INSERT INTO urls (url, title, visit_count, last_visit, frecency, frecency_key) VALUES (?, ?, ?, ?, ?, ?)");
+            db.beginTransaction();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"))) {
+                Cursor cursor = db.rawQuery("SELECT url FROM urls", null);
+                try {
+                    while (cursor.moveToNext()) {
+                        known.add(DataTransfer.fingerprint(cursor.getString(0)));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                long now = System.currentTimeMillis();
+                int malformed = HistoryJsonLines.read(reader, (url, title, visitCount, lastVisit) -> {
+                    counts[0]++;
+                    if (!DataTransfer.isImportableUrl(url) || !known.add(DataTransfer.fingerprint(url))) {
+                        counts[2]++;
+                    } else {
+                        long time = lastVisit > 0 && lastVisit <= now ? lastVisit : now;
+                        insertUrl.bindString(1, url);
+                        insertUrl.bindString(2, title != null && !title.isEmpty() ? title : url);
+                        insertUrl.bindLong(3, visitCount);
+                        insertUrl.bindLong(4, time);
+                        double frecency = Frecency.visitScore(time) + Math.log(visitCount);
+                        insertUrl.bindDouble(5, frecency);
+                        insertUrl.bindLong(6, Frecency.key(frecency));
+                        insertUrl.executeInsert();
+                        counts[1]++;
+                    }
+                    if (counts[0] % DataTransfer.BATCH_SIZE == 0) {
+                        db.setTransactionSuccessful();
+                        db.endTransaction();
+                        db.beginTransaction();
+                        if (progress != null) {
+                            int processed = counts[0];
+                            mainHandler.post(() -> progress.onProgress(processed));
+                        }
+                    }
+                });
+                counts[2] += malformed;
+                db.setTransactionSuccessful();
+            } catch (Exception e) {
+                Log.e("History", "Error importing history: " + e.getMessage(), e);
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            } finally {
+                db.endTransaction();
+                insertUrl.close();
+            }
+            Log.d("History", "Imported " + counts[1] + " of " + counts[0] + " history entries");
+            compact();
+            DataTransfer.Result result = new DataTransfer.Result(counts[0], counts[1], counts[2], error);
+            mainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    // Writes every URL in frecency order as JSON lines and closes the stream
+    void exportJsonLines(OutputStream out, DataTransfer.Progress progress, ResultCallback<DataTransfer.Result> callback) {
+        writer.post(() -> {
+            writePending();
+            int written = 0;
+            String error = null;
+            Cursor cursor = null;
+            try (Writer stream = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"))) {
+                HistoryJsonLines.Output output = new HistoryJsonLines.Output(stream);
+                cursor = database.getReadableDatabase().rawQuery(
+                        "SELECT url, title, visit_count, last_visit FROM urls ORDER BY frecency_key DESC", null);
+                while (cursor.moveToNext()) {
+                    output.entry(cursor.getString(0), cursor.getString(1), cursor.getInt(2), cursor.getLong(3));
+                    if (++written % DataTransfer.BATCH_SIZE == 0 && progress != null) {
+                        int processed = written;
+                        mainHandler.post(() -> progress.onProgress(processed));
+                    }
+                }
+            } catch (Exception e) {
+                Log.e("History", "Error exporting history: " + e.getMessage(), e);
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            DataTransfer.Result result = new DataTransfer.Result(written, written, 0, error);
+            mainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    // Writer thread: one transaction per batch
+    private void writePending() {
+        List<Visit> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        writer.removeCallbacks(flushTask);
+        try {
+            insertVisits(batch);
+            Log.d("History", "Committed " + batch.size() + " visits and title updates");
+        } catch (Exception e) {
+            Log.e("History", "Error writing history: " + e.getMessage(), e);
+            return;
+        }
+        insertsSinceCompaction += batch.size();
+        if (insertsSinceCompaction >= COMPACT_EVERY) {
+            compact();
+        }
+    }
+
+    // Writer thread: appends the visits and folds them into urls, in one transaction
+    private void insertVisits(List<Visit> batch) {
+        SQLiteDatabase db = database.getWritableDatabase();
+        SQLiteStatement insertVisit = db.compileStatement(
+                "INSERT INTO visits (url, title, visited_at) VALUES (?, ?, ?)");
+        SQLiteStatement updateUrl = db.compileStatement(
+                "UPDATE urls SET title = ?, visit_count = visit_count + 1, last_visit = ?, frecency = ?, frecency_key = ? "
+                        + "WHERE _id = ?");
+        SQLiteStatement insertUrl = db.compileStatement(
+                "INSERT INTO urls (url, title, visit_count, last_visit, frecency, frecency_key) VALUES (?, ?, 1, ?, ?, ?)");
+        SQLiteStatement renameUrl = db.compileStatement("UPDATE urls SET title = ? WHERE url = ?");
+        SQLiteStatement renameVisit = db.compileStatement(
+                "UPDATE visits SET title = ? WHERE _id = (SELECT MAX(_id) FROM visits WHERE url = ?)");
+        db.beginTransaction();
+        try {
+            for (Visit visit : batch) {
+                if (visit.titleOnly) {
+                    renameUrl.bindString(1, visit.title);
+                    renameUrl.bindString(2, visit.url);
+                    renameUrl.executeUpdateDelete();
+                    renameVisit.bindString(1, visit.title);
+                    renameVisit.bindString(2, visit.url);
+                    renameVisit.executeUpdateDelete();
+                    continue;
+                }
+                insertVisit.bindString(1, visit.url);
+                insertVisit.bindString(2, visit.title);
+                insertVisit.bindLong(3, visit.time);
+                insertVisit.executeInsert();
+
+                double score = Frecency.visitScore(visit.time);
+                Cursor existing = db.rawQuery("SELECT _id, frecency FROM urls WHERE url = ?", new String[] {visit.url});
+                try {
+                    if (existing.moveToFirst()) {
+                        updateUrl.bindString(1, visit.title);
+                        updateUrl.bindLong(2, visit.time);
+                        double frecency = Frecency.logAddExp(existing.getDouble(1), score);
+                        updateUrl.bindDouble(3, frecency);
+                        updateUrl.bindLong(4, Frecency.key(frecency));
+                        updateUrl.bindLong(5, existing.getLong(0));
+                        updateUrl.executeUpdateDelete();
+                    } else {
+                        insertUrl.bindString(1, visit.url);
+                        insertUrl.bindString(2, visit.title);
+                        insertUrl.bindLong(3, visit.time);
+                        insertUrl.bindDouble(4, score);
+                        insertUrl.bindLong(5, Frecency.key(score));
+                        insertUrl.executeInsert();
+                    }
+                } finally {
+                    existing.close();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertVisit.close();
+            updateUrl.close();
+            insertUrl.close();
+            renameUrl.close();
+            renameVisit.close();
+        }
+    }
+
+    // Writer thread: caps the visit log and drops the lowest-ranked URLs beyond MAX_URLS.
+    // Visit counts and frecency live in urls, so trimming old visits loses nothing.
+    private void compact() {
+        try {
+            long started = System.currentTimeMillis();
+            SQLiteDatabase db = database.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.execSQL("DELETE FROM visits WHERE _id NOT IN "
+                        + "(SELECT _id FROM visits ORDER BY _id DESC LIMIT " + MAX_VISITS + ")");
+                db.execSQL("DELETE FROM urls WHERE _id NOT IN "
+                        + "(SELECT _id FROM urls ORDER BY frecency_key DESC LIMIT " + MAX_URLS + ")");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            insertsSinceCompaction = 0;
+            Log.d("History", "Compacted history in " + (System.currentTimeMillis() - started) + " ms");
+        } catch (Exception e) {
+            Log.e("History", "Error compacting history: " + e.getMessage(), e);
+        }
+    }
+
+    // Reads the ENTRY_COLUMNS of a row
+    private static Entry readEntry(Cursor cursor) {
+        return new Entry(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                cursor.getInt(3), cursor.getLong(4), cursor.getDouble(5), cursor.getLong(6));
+    }
+
+    // Writer thread: moves the old SharedPreferences history into the log once
+    private void migrateLegacyPrefs() {
+        SharedPreferences legacy = context.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE);
+        String order = legacy.getString("history_order", "");
+        if (order.isEmpty()) {
+            return;
+        }
+        try {
+            // history_order is newest first; keep that order with decreasing timestamps
+            List<Visit> visits = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (String url : order.split("\\|")) {
+                if (!url.isEmpty()) {
+                    visits.add(0, new Visit(url, legacy.getString(url, url), now - visits.size(), false));
+                }
+            }
+            insertVisits(visits);
+            int migrated = visits.size();
+            legacy.edit().clear().commit();
+            Log.d("History", "Migrated " + migrated + " history entries from preferences");
+        } catch (Exception e) {
+            Log.e("History", "Error migrating history: " + e.getMessage(), e);
+        }
+    }
+}
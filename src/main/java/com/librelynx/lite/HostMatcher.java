@@ -0,0 +1,214 @@
+package com.librelynx.lite;
+
+import java.util.Collection;
+import java.util.Locale;
+
+// Immutable host-suffix index for tracker rules.
+//
+// Every rule domain is stored in an open-addressed table keyed by a hash of its
+// characters read right to left. A lookup walks the URL host once from the end,
+// probing the table at each label boundary, so "a.b.doubleclick.net" costs four
+// probes no matter how many rules are loaded and nothing is allocated.
+//
+// A rule may carry a path prefix ("facebook.com/tr"); it then only matches URLs on
+// that host whose path is exactly the prefix or continues below it.
+final class HostMatcher implements Blocklist {
+
+    private final int[] hashes;
+    private final String[] domains;
+    private final String[] paths;
+    private final int mask;
+    private final int size;
+
+    private HostMatcher(int[] hashes, String[] domains, String[] paths, int size) {
+        this.hashes = hashes;
+        this.domains = domains;
+        this.paths = paths;
+        this.mask = hashes.length - 1;
+        this.size = size;
+    }
+
+    static HostMatcher compile(String[] rules) {
+        return compile(java.util.Arrays.asList(rules));
+    }
+
+    static HostMatcher compile(Collection<String> rules) {
+        // Keep the table at most half full so probe chains stay short
+        int capacity = 16;
+        while (capacity < rules.size() * 2) {
+            capacity <<= 1;
+        }
+        int[] hashes = new int[capacity];
+        String[] domains = new String[capacity];
+        String[] paths = new String[capacity];
+        int mask = capacity - 1;
+        int size = 0;
+
+        for (String raw : rules) {
+            String rule = normalizeRule(raw);
+            if (rule == null) {
+                continue;
+            }
+            int slash = rule.indexOf('/');
+            String domain = slash < 0 ? rule : rule.substring(0, slash);
+            String path = slash < 0 ? null : rule.substring(slash);
+            if (domain.isEmpty()) {
+                continue;
+            }
+            int hash = reverseHash(domain, 0, domain.length());
+            int slot = mix(hash) & mask;
+            boolean duplicate = false;
+            while (domains[slot] != null) {
+                if (hashes[slot] == hash && domains[slot].equals(domain)
+                        && (path == null ? paths[slot] == null : path.equals(paths[slot]))) {
+                    duplicate = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (duplicate) {
+                continue;
+            }
+            hashes[slot] = hash;
+            domains[slot] = domain;
+            paths[slot] = path;
+            size++;
+        }
+        return new HostMatcher(hashes, domains, paths, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // True if the URL's host (or a parent domain of it) is covered by a rule
+    boolean matches(String url) {
+        if (url == null || url.isEmpty() || size == 0) {
+            return false;
+        }
+        int start = UrlHosts.hostStart(url);
+        int end = UrlHosts.hostEnd(url, start);
+        return end > start && matches(url, start, end);
+    }
+
+    // Same as matches(String) but for a host range already located by the caller
+    @Override
+    public boolean matches(String url, int hostStart, int hostEnd) {
+        if (size == 0) {
+            return false;
+        }
+        int hash = 0;
+        for (int i = hostEnd - 1; i >= hostStart; i--) {
+            hash = 31 * hash + UrlHosts.lower(url.charAt(i));
+            if (i == hostStart || url.charAt(i - 1) == '.') {
+                if (probe(url, i, hostEnd, hash)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean probe(String url, int from, int hostEnd, int hash) {
+        int length = hostEnd - from;
+        int slot = mix(hash) & mask;
+        String domain;
+        while ((domain = domains[slot]) != null) {
+            if (hashes[slot] == hash && domain.length() == length
+                    && url.regionMatches(true, from, domain, 0, length)) {
+                String path = paths[slot];
+                if (path == null || pathMatches(url, hostEnd, path)) {
+                    return true;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private static boolean pathMatches(String url, int hostEnd, String prefix) {
+        int pathStart = UrlHosts.pathStart(url, hostEnd);
+        if (!url.regionMatches(pathStart, prefix, 0, prefix.length())) {
+            return false;
+        }
+        int next = pathStart + prefix.length();
+        if (next >= url.length()) {
+            return true;
+        }
+        char c = url.charAt(next);
+        return c == '/' || c == '?' || c == '#';
+    }
+
+    // Hash of s[from, to) read right to left, matching the incremental walk in matches()
+    static int reverseHash(String s, int from, int to) {
+        int hash = 0;
+        for (int i = to - 1; i >= from; i--) {
+            hash = 31 * hash + UrlHosts.lower(s.charAt(i));
+        }
+        return hash;
+    }
+
+    static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    // Accepts plain domains, hosts-file lines ("0.0.0.0 example.com") and simple
+    // Adblock network rules ("||example.com^"). Returns null for comments and
+    // anything that is not a host rule, including element-hiding rules such as
+    // "example.com##.ad" which share the list files.
+    static String normalizeRule(String line) {
+        if (line == null) {
+            return null;
+        }
+        String rule = line.trim();
+        if (rule.isEmpty() || rule.charAt(0) == '#' || rule.charAt(0) == '!' || rule.charAt(0) == '[') {
+            return null;
+        }
+        if (rule.contains("##") || rule.contains("#@#") || rule.contains("#?#")) {
+            return null;
+        }
+        // hosts-file style trailing comment, only where a '#' follows whitespace
+        for (int i = 1; i < rule.length(); i++) {
+            if (rule.charAt(i) == '#' && Character.isWhitespace(rule.charAt(i - 1))) {
+                rule = rule.substring(0, i).trim();
+                break;
+            }
+        }
+        int space = rule.lastIndexOf(' ');
+        if (space < 0) {
+            space = rule.lastIndexOf('\t');
+        }
+        if (space >= 0) {
+            // hosts-file format, the host is the last column
+            rule = rule.substring(space + 1);
+        }
+        if (rule.startsWith("||")) {
+            rule = rule.substring(2);
+            int caret = rule.indexOf('^');
+            if (caret >= 0) {
+                if (caret != rule.length() - 1) {
+                    return null; // options or wildcards, not a plain host rule
+                }
+                rule = rule.substring(0, caret);
+            }
+        }
+        int scheme = rule.indexOf("://");
+        if (scheme >= 0) {
+            rule = rule.substring(scheme + 3);
+        }
+        if (rule.startsWith("*.")) {
+            rule = rule.substring(2);
+        } else if (rule.startsWith(".")) {
+            rule = rule.substring(1);
+        }
+        if (rule.isEmpty() || rule.indexOf('*') >= 0 || rule.indexOf('$') >= 0 || rule.indexOf('#') >= 0
+                || "localhost".equals(rule) || "0.0.0.0".equals(rule)) {
+            return null;
+        }
+        return rule.toLowerCase(Locale.ROOT);
+    }
+}
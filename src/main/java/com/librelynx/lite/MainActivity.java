@@ -2,27 +2,37 @@ package com.librelynx.lite;
 
 import android.Manifest;
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Gravity;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.GridView;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.ListAdapter;
+import android.widget.ListPopupWindow;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -30,43 +40,120 @@ import androidx.core.content.ContextCompat;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 import androidx.appcompat.widget.PopupMenu;
 import androidx.core.app.ActivityCompat;
+import androidx.webkit.WebViewFeature;
 import android.webkit.CookieManager;
+import android.webkit.RenderProcessGoneDetail;
+import android.webkit.WebBackForwardList;
 import android.webkit.WebChromeClient;
+import android.webkit.WebResourceError;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
+import java.io.ByteArrayInputStream;
+import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import android.content.ActivityNotFoundException;
 
 
 public class MainActivity extends Activity {
     
-    private List<WebView> tabs;
-    private int activeTabIndex;
+    private TabManager tabManager;
+    private SessionStore sessionStore;
+    private WebViewPool webViewPool;
+    private TabThumbnails tabThumbnails;
+    private TabManager.RendererDeaths rendererDeaths;
+    private StartupTrace startupTrace;
+    private OfflineStore offlineStore;
+    private boolean sessionRestored;
     private EditText urlEditText;
     private Button goButton, settingsButton;
+    private TextView blockedBadge;
     private ProgressBar progressBar;
     private SwipeRefreshLayout swipeRefreshLayout;
     private SharedPreferences prefs;
-    private List<String> browserHistory = new ArrayList<>();
+    private HistoryStore historyStore;
+    private BookmarkStore bookmarkStore;
     private AlertDialog tabSwitchDialog;  // Added for improved tab management
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final NavigationTracker.Scheduler navigationScheduler = NavigationTracker.Scheduler.of(mainHandler);
+    private final AtomicBoolean badgeUpdatePending = new AtomicBoolean();
+    private AppRouter appRouter;
+    private Autocomplete autocomplete;
+    private ListPopupWindow suggestionPopup;
+    private ArrayAdapter<Autocomplete.Match> suggestionAdapter;
+    private boolean applyingCompletion; // text changes made by autocomplete itself
+    private boolean userDeleting;
+    private boolean documentStartCosmetics; // cosmetic CSS registered as a document-start script
+    private boolean rendererProbe; // hidden-tab work counted in pages, debuggable builds only
     
     private String currentSearchEngine = "mojeek"; // Default remains mojeek
     private String currentTheme = "dark";
     
     private static final int PERMISSION_REQUEST_CODE = 1;
+    private static final int IMPORT_BOOKMARKS_REQUEST = 2;
+    private static final int EXPORT_BOOKMARKS_REQUEST = 3;
+    private static final int IMPORT_HISTORY_REQUEST = 4;
+    private static final int EXPORT_HISTORY_REQUEST = 5;
     private static final String PREFS_NAME = "LibreLynxLitePrefs";
     private static final String KEY_FIRST_LAUNCH = "first_launch";
     private static final String KEY_THEME = "theme";
-    private static final int MAX_HISTORY_SIZE = 20;
+    private static final int HISTORY_PAGE_SIZE = 50;
+    private static final int BOOKMARK_PAGE_SIZE = 100;
+    private static final int SEARCH_RESULT_LIMIT = 100;
+    private static final long SEARCH_DEBOUNCE_MS = 150;
     
-    private static final String BRAVE_SEARCH = "https://search.brave.com/search?q=";
-    private static final String MOJEEK_SEARCH = "https://www.mojeek.com/search?q=";
+    // Built-in tracker rules, matched against the URL host (and path for host/path rules)
+    private static final String[] BUILTIN_TRACKERS = {
+        "google-analytics.com",
+        "googletagmanager.com",
+        "facebook.com/tr",
+        "doubleclick.net",
+        "googlesyndication.com"
+    };
+    private static final HostMatcher TRACKER_MATCHER = HostMatcher.compile(BUILTIN_TRACKERS);
+    // Built-in element-hiding rules (EasyList "##" syntax), more are loaded from assets
+    private static final String[] BUILTIN_COSMETIC_RULES = {
+        // Brave Search minimal UI
+        "search.brave.com##.header-button-icon.svelte-2b86ho",      // hide settings cog
+        "search.brave.com##.download-cta",                          // hide download CTA
+        "search.brave.com##footer.desktop-small-regular.t-tertiary", // hide footer copyright
+        "search.brave.com##.desktop-small-regular.t-tertiary",      // hide extra footer links
+        "search.brave.com##.content.svelte-6sdecn",                 // hide Resources / Products / Policies
+        // Mojeek homepage & search results clean-up
+        "mojeek.com##.pop-in.js-pop",
+        "mojeek.com##label.popover-label, label[for='settings']",
+        "mojeek.com##.hamburger-ctn",
+        "mojeek.com##.bullets",
+        "mojeek.com##.para",
+        "mojeek.com##.footer.inverted",
+        "mojeek.com##.feedback-sticky",
+        "mojeek.com##.footer-loc",
+        "mojeek.com##.footer",
+        "mojeek.com##.scb"
+    };
+    // Process-wide so recreate() (theme changes) does not reload the lists
+    private static final BlocklistManager BLOCKLISTS = new BlocklistManager(TRACKER_MATCHER, BUILTIN_COSMETIC_RULES);
+    private static final BlockingStats GLOBAL_STATS = new BlockingStats();
+    private static final NavigationTracker.Counters NAVIGATION_COUNTERS = new NavigationTracker.Counters();
+    private static final WebViewPool.Latency NEW_TAB_LATENCY = new WebViewPool.Latency();
+    private static final TabManager.HiddenTabWork HIDDEN_TAB_WORK = new TabManager.HiddenTabWork();
+    private static final long BADGE_UPDATE_INTERVAL_MS = 250;
+    private static final byte[] EMPTY_BODY = new byte[0];
     
     // Bookmark helper class
     private static class BookmarkItem {
+        private long id = -1; // -1 for history entries
+        private boolean folder;
         private String title;
         private String url;
 
@@ -75,6 +162,14 @@ public class MainActivity extends Activity {
             this.url = url;
         }
 
+        public BookmarkItem(BookmarkStore.Bookmark bookmark) {
+            this(bookmark.title, bookmark.url);
+            this.id = bookmark.id;
+            this.folder = bookmark.folder;
+        }
+
+        public long getId() { return id; }
+        public boolean isFolder() { return folder; }
         public String getTitle() { return title; }
         public String getUrl() { return url; }
     }
@@ -84,16 +179,22 @@ public class MainActivity extends Activity {
         private String title;
         private String url;
         private int tabIndex;
+        private long tabId;
+        private long blockedCount;
 
-        public TabItem(String title, String url, int tabIndex) {
+        public TabItem(String title, String url, int tabIndex, long tabId, long blockedCount) {
             this.title = title != null ? title : "New Tab";
             this.url = url != null ? url : "";
             this.tabIndex = tabIndex;
+            this.tabId = tabId;
+            this.blockedCount = blockedCount;
         }
 
         public String getTitle() { return title; }
         public String getUrl() { return url; }
         public int getTabIndex() { return tabIndex; }
+        public long getTabId() { return tabId; }
+        public long getBlockedCount() { return blockedCount; }
     }
 
     // Enhanced Bookmark Adapter with proper click handling
@@ -127,10 +228,10 @@ public class MainActivity extends Activity {
             }
 
             titleView.setText(bookmark.getTitle());
-            urlView.setText(bookmark.getUrl());
+            urlView.setText(bookmark.isFolder() ? "Folder" : bookmark.getUrl());
             
             // Set favicon based on domain
-            String favicon = getFaviconForDomain(bookmark.getUrl());
+            String favicon = bookmark.isFolder() ? "📁" : getFaviconForDomain(bookmark.getUrl());
             faviconView.setText(favicon);
             
             // Apply theme colors
@@ -175,7 +276,7 @@ public class MainActivity extends Activity {
                     if (isValidUrl(bookmark.getUrl())) {
                         WebView webView = getActiveWebView();
                         if (webView != null) {
-                            webView.loadUrl(bookmark.getUrl());
+                            loadPage(webView, bookmark.getUrl());
                             urlEditText.setText(bookmark.getUrl());
                             Log.d("BookmarkAdapter", "Loaded bookmark: " + bookmark.getUrl());
                             
@@ -197,11 +298,8 @@ public class MainActivity extends Activity {
                 }
             });
             
-            // Handle menu click - show options
-            menuView.setOnClickListener(v -> {
-                Log.d("BookmarkAdapter", "Menu clicked for bookmark: " + bookmark.getUrl());
-                showBookmarkMenu(bookmark, position, v); // Pass the clicked view as anchor
-            });
+            // The menu is bound by the bookmark and history dialogs, which know what
+            // to refresh after an action
             
             // Log view creation for debugging
             Log.d("BookmarkAdapter", "Created view for bookmark: " + bookmark.getUrl());
@@ -255,6 +353,7 @@ public class MainActivity extends Activity {
             TextView urlView = convertView.findViewById(R.id.tab_url);
             TextView closeButton = convertView.findViewById(R.id.tab_close);
             TextView activeIndicator = convertView.findViewById(R.id.tab_active_indicator);
+            ImageView thumbnailView = convertView.findViewById(R.id.tab_thumbnail);
 
             if (titleView != null) {
                 titleView.setText(tabItem.getTitle());
@@ -264,12 +363,19 @@ public class MainActivity extends Activity {
                 if (displayUrl.length() > 50) {
                     displayUrl = displayUrl.substring(0, 47) + "...";
                 }
+                if (tabItem.getBlockedCount() > 0) {
+                    displayUrl = "🛡 " + tabItem.getBlockedCount() + " blocked · " + displayUrl;
+                }
                 urlView.setText(displayUrl);
             }
 
+            if (thumbnailView != null) {
+                tabThumbnails.bind(thumbnailView, tabItem.getTabId(), R.drawable.ic_webpage);
+            }
+
             // Show active tab indicator
             if (activeIndicator != null) {
-                activeIndicator.setVisibility(tabItem.getTabIndex() == activeTabIndex ? View.VISIBLE : View.GONE);
+                activeIndicator.setVisibility(tabItem.getTabIndex() == tabManager.activeIndex() ? View.VISIBLE : View.GONE);
             }
 
             androidx.cardview.widget.CardView cardView = (androidx.cardview.widget.CardView) convertView;
@@ -304,7 +410,10 @@ public class MainActivity extends Activity {
             
             // Handle tab selection
             cardView.setOnClickListener(v -> {
-                switchTab(tabItem.getTabIndex());
+                int index = tabManager.indexOf(tabItem.getTabId());
+                if (index >= 0) {
+                    switchTab(index);
+                }
                 // Dismiss the dialog
                 if (tabSwitchDialog != null) {
                     tabSwitchDialog.dismiss();
@@ -314,7 +423,7 @@ public class MainActivity extends Activity {
             // Handle tab close
             if (closeButton != null) {
                 closeButton.setOnClickListener(v -> {
-                    closeTab(tabItem.getTabIndex());
+                    closeTab(tabItem.getTabId());
                     // Refresh the dialog
                     showImprovedSwitchTabDialog();
                 });
@@ -326,54 +435,153 @@ public class MainActivity extends Activity {
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        // Only what the first frame needs runs here: the theme, the views, the
+        // active tab and its single initial navigation. Input handling follows the
+        // first frame and the rest waits for the main thread to go idle.
+        startupTrace = new StartupTrace(this);
         try {
             Log.d("MainActivity", "Starting onCreate");
-            prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            currentTheme = prefs.getString(KEY_THEME, "dark");
-            switch (currentTheme) {
-                case "ocean":
-                    setTheme(R.style.AppTheme_Ocean);
-                    break;
-                case "forest":
-                    setTheme(R.style.AppTheme_Forest);
-                    break;
-                case "sunset":
-                    setTheme(R.style.AppTheme_Sunset);
-                    break;
-                case "dark":
-                default:
-                    setTheme(R.style.AppTheme_Dark);
-                    break;
+            startupTrace.begin("theme");
+            try {
+                prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+                currentTheme = prefs.getString(KEY_THEME, "dark");
+                switch (currentTheme) {
+                    case "ocean":
+                        setTheme(R.style.AppTheme_Ocean);
+                        break;
+                    case "forest":
+                        setTheme(R.style.AppTheme_Forest);
+                        break;
+                    case "sunset":
+                        setTheme(R.style.AppTheme_Sunset);
+                        break;
+                    case "dark":
+                    default:
+                        setTheme(R.style.AppTheme_Dark);
+                        break;
+                }
+                currentSearchEngine = prefs.getString("search_engine", "mojeek");
+            } finally {
+                startupTrace.end();
+            }
+            
+            startupTrace.begin("content_view");
+            try {
+                super.onCreate(savedInstanceState);
+                setContentView(R.layout.activity_main);
+                Log.d("MainActivity", "Initializing views");
+                initializeViews();
+            } finally {
+                startupTrace.end();
+            }
+            
+            // Kicked off early, the lists load in the background while the tab is built
+            startupTrace.begin("blocklist");
+            try {
+                if (!BLOCKLISTS.isLoaded()) {
+                    Log.d("MainActivity", "Loading tracker blocklist in background");
+                    BLOCKLISTS.reload(this);
+                }
+                documentStartCosmetics = WebViewFeature.isFeatureSupported(WebViewFeature.DOCUMENT_START_SCRIPT);
+                Log.d("MainActivity", "Document-start cosmetic injection: " + documentStartCosmetics);
+                rendererProbe = documentStartCosmetics
+                        && (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+            } finally {
+                startupTrace.end();
+            }
+            
+            startupTrace.begin("tabs");
+            try {
+                Log.d("MainActivity", "Setting up tabs");
+                setupTabs();
+                // Cookies must be off before the first request goes out
+                Log.d("MainActivity", "Setting up privacy settings");
+                setupPrivacySettings();
+                startInitialNavigation();
+            } finally {
+                startupTrace.end();
             }
             
-            super.onCreate(savedInstanceState);
-            setContentView(R.layout.activity_main);
-            
-            Log.d("MainActivity", "Initializing views");
-            initializeViews();
-            Log.d("MainActivity", "Loading history");
-            loadHistory();
-            Log.d("MainActivity", "Setting up tabs");
-            setupTabs();
-            Log.d("MainActivity", "Setting up privacy settings");
-            setupPrivacySettings();
-            Log.d("MainActivity", "Setting up buttons");
-            setupButtons();
-            Log.d("MainActivity", "Setting up swipe refresh");
-            setupSwipeRefresh();
-            Log.d("MainActivity", "Checking permissions");
-            checkPermissions();
+            scheduleDeferredStartup();
+        } catch (Exception e) {
+            Log.e("MainActivity", "Error in onCreate: " + e.getMessage(), e);
+            Toast.makeText(this, "Error initializing app: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+    
+    // The one navigation of a cold start. Restored tabs navigate as they wake, and
+    // on first launch the search engine dialog loads the engine the user picks.
+    private void startInitialNavigation() {
+        if (sessionRestored) {
+            BrowserTab tab = tabManager.activeTab();
+            startupTrace.onNavigation(tab != null ? tab.url() : null);
+            Log.d("MainActivity", "Keeping the restored tab instead of loading the search engine");
+        } else if (prefs.getBoolean(KEY_FIRST_LAUNCH, true)) {
+            Log.d("MainActivity", "First launch, waiting for a search engine choice");
+        } else {
+            Log.d("MainActivity", "Loading search engine");
+            loadSearchEngine();
+        }
+    }
+    
+    // Input handling is set up just after the first frame is drawn, everything
+    // else once the main thread is idle
+    private void scheduleDeferredStartup() {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted from pre-draw, so it runs once this frame has been drawn
+                mainHandler.post(MainActivity.this::runFirstFrameStages);
+                return true;
+            }
+        });
+    }
+    
+    private void runFirstFrameStages() {
+        try {
+            startupTrace.onFirstFrame();
+            startupTrace.begin("interaction");
+            try {
+                Log.d("MainActivity", "Loading history");
+                loadHistory();
+                Log.d("MainActivity", "Setting up buttons");
+                setupButtons();
+                Log.d("MainActivity", "Setting up swipe refresh");
+                setupSwipeRefresh();
+            } finally {
+                startupTrace.end();
+            }
             
             if (prefs.getBoolean(KEY_FIRST_LAUNCH, true)) {
                 Log.d("MainActivity", "First launch, showing search engine dialog");
                 showSearchEngineDialog();
-            } else {
-                Log.d("MainActivity", "Loading search engine");
-                loadSearchEngine();
             }
+            Looper.myQueue().addIdleHandler(() -> {
+                runIdleStages();
+                return false;
+            });
         } catch (Exception e) {
-            Log.e("MainActivity", "Error in onCreate: " + e.getMessage(), e);
-            Toast.makeText(this, "Error initializing app: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            Log.e("MainActivity", "Error in runFirstFrameStages: " + e.getMessage(), e);
+        }
+    }
+    
+    private void runIdleStages() {
+        try {
+            startupTrace.begin("idle");
+            try {
+                appRouter = new AppRouter(this);
+                appRouter.register();
+                Log.d("MainActivity", "Checking permissions");
+                checkPermissions();
+            } finally {
+                startupTrace.end();
+                // Reported even if a stage failed
+                startupTrace.onIdleStagesDone();
+            }
+        } catch (Exception e) {
+            Log.e("MainActivity", "Error in runIdleStages: " + e.getMessage(), e);
         }
     }
     
@@ -384,16 +592,15 @@ public class MainActivity extends Activity {
             settingsButton = findViewById(R.id.settings_button);
             progressBar = findViewById(R.id.progress_bar);
             swipeRefreshLayout = findViewById(R.id.swipe_refresh_layout);
+            blockedBadge = findViewById(R.id.blocked_badge);
             
             if (urlEditText == null || goButton == null || settingsButton == null || 
-                progressBar == null || swipeRefreshLayout == null) {
+                progressBar == null || swipeRefreshLayout == null || blockedBadge == null) {
                 Log.e("MainActivity", "One or more views not found in activity_main.xml");
                 Toast.makeText(this, "Error: UI components missing", Toast.LENGTH_LONG).show();
                 return;
             }
             
-            prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            currentSearchEngine = prefs.getString("search_engine", "mojeek");
             Log.d("MainActivity", "Views initialized, search engine: " + currentSearchEngine);
         } catch (Exception e) {
             Log.e("MainActivity", "Error in initializeViews: " + e.getMessage(), e);
@@ -401,67 +608,49 @@ public class MainActivity extends Activity {
         }
     }
 
-    // Load history from SharedPreferences
+    // Open the history store; legacy preferences are migrated on its writer thread
     private void loadHistory() {
         try {
-            SharedPreferences historyPrefs = getSharedPreferences("LibreLynxHistory", MODE_PRIVATE);
-            String historyOrder = historyPrefs.getString("history_order", "");
-            
-            browserHistory.clear();
-            if (!historyOrder.isEmpty()) {
-                String[] urls = historyOrder.split("\\|");
-                for (String url : urls) {
-                    if (!url.isEmpty()) {
-                        browserHistory.add(url);
-                    }
-                }
-            }
-            
-            Log.d("History", "Loaded " + browserHistory.size() + " items from history");
+            historyStore = HistoryStore.get(this);
+            bookmarkStore = BookmarkStore.get(this);
+            offlineStore = OfflineStore.get(this);
+            Log.d("History", "History store ready");
         } catch (Exception e) {
             Log.e("History", "Error loading history: " + e.getMessage(), e);
         }
     }
 
+    // Collapses each tab's navigation callbacks into history writes
+    private final NavigationTracker.Sink historySink = new NavigationTracker.Sink() {
+        @Override
+        public void onVisit(String url, String title) {
+            addToHistory(url, title);
+        }
+        
+        @Override
+        public void onTitle(String url, String title) {
+            try {
+                if (historyStore != null) {
+                    historyStore.updateTitle(url, title);
+                }
+                if (autocomplete != null) {
+                    autocomplete.onTitle(url, title);
+                }
+            } catch (Exception e) {
+                Log.e("History", "Error updating history title: " + e.getMessage(), e);
+            }
+        }
+    };
+    
     // Add URL to history
     private void addToHistory(String url, String title) {
         try {
-            if (url == null || url.isEmpty() || url.equals("about:blank")) {
-                return;
-            }
-            
-            // Remove duplicate if exists
-            browserHistory.remove(url);
-            
-            // Add to beginning of list
-            browserHistory.add(0, url);
-            
-            // Limit history size
-            if (browserHistory.size() > MAX_HISTORY_SIZE) {
-                browserHistory = browserHistory.subList(0, MAX_HISTORY_SIZE);
+            if (historyStore != null) {
+                historyStore.recordVisit(url, title);
             }
-            
-            // Save to SharedPreferences for persistence
-            SharedPreferences historyPrefs = getSharedPreferences("LibreLynxHistory", MODE_PRIVATE);
-            SharedPreferences.Editor editor = historyPrefs.edit();
-            
-            // Store URL with title
-            if (title != null && !title.isEmpty()) {
-                editor.putString(url, title);
-            } else {
-                editor.putString(url, url); // Use URL as title if no title available
-            }
-            
-            // Store the ordered list
-            StringBuilder historyString = new StringBuilder();
-            for (int i = 0; i < browserHistory.size(); i++) {
-                if (i > 0) historyString.append("|");
-                historyString.append(browserHistory.get(i));
+            if (autocomplete != null) {
+                autocomplete.onVisit(url, title);
             }
-            editor.putString("history_order", historyString.toString());
-            editor.apply();
-            
-            Log.d("History", "Added to history: " + url + " with title: " + title);
         } catch (Exception e) {
             Log.e("History", "Error adding to history: " + e.getMessage(), e);
         }
@@ -469,11 +658,29 @@ public class MainActivity extends Activity {
     
     private void setupTabs() {
         try {
-            tabs = new ArrayList<>();
-            activeTabIndex = 0;
-            WebView webView = new WebView(this);
-            setupWebView(webView);
-            tabs.add(webView);
+            ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+            int liveLimit = TabManager.liveLimitFor(activityManager.getMemoryClass(), activityManager.isLowRamDevice());
+            tabManager = new TabManager(this::createTabWebView, liveLimit);
+            Log.d("MainActivity", "Keeping up to " + liveLimit + " tabs live");
+            sessionStore = new SessionStore(this, tabManager);
+            // Filled once the first page has painted; none on low-RAM devices
+            webViewPool = new WebViewPool(this::createConfiguredWebView, activityManager.isLowRamDevice() ? 0 : 1);
+            
+            // Restored tabs are placeholders; only the active one gets a WebView now
+            SessionStore.Session session = sessionStore.load();
+            Set<Long> restoredIds = new HashSet<>();
+            if (session != null) {
+                for (SessionStore.SavedTab saved : session.tabs) {
+                    tabManager.add(BrowserTab.restored(saved.id, newNavigationTracker(), saved.title, saved.url));
+                    restoredIds.add(saved.id);
+                }
+            }
+            sessionStore.deleteOrphans(restoredIds);
+            tabThumbnails = new TabThumbnails(this, activityManager.getMemoryClass());
+            rendererDeaths = new TabManager.RendererDeaths(activityManager.getMemoryClass());
+            tabThumbnails.deleteOrphans(restoredIds);
+            sessionRestored = session != null;
+            WebView webView = tabManager.activate(sessionRestored ? session.activeIndex : tabManager.add(newTab()));
             ViewGroup webViewContainer = findViewById(R.id.webview);
             if (webViewContainer == null) {
                 Log.e("MainActivity", "WebView container not found in activity_main.xml");
@@ -486,14 +693,41 @@ public class MainActivity extends Activity {
             ));
             ((ViewGroup) webViewContainer).removeAllViews();
             ((ViewGroup) webViewContainer).addView(webView);
-            Log.d("MainActivity", "Tabs set up, added WebView to container");
-            webView.loadUrl("https://www.mojeek.com"); // Ensure initial load
+            if (sessionRestored) {
+                Log.d("MainActivity", "Restored session with " + tabManager.size() + " tabs");
+            } else {
+                Log.d("MainActivity", "Tabs set up, added WebView to container");
+            }
         } catch (Exception e) {
             Log.e("MainActivity", "Error in setupTabs: " + e.getMessage(), e);
             Toast.makeText(this, "Error setting up tabs", Toast.LENGTH_LONG).show();
         }
     }
     
+    private BrowserTab newTab() {
+        return new BrowserTab(tabManager.newTabId(), newNavigationTracker());
+    }
+    
+    private NavigationTracker newNavigationTracker() {
+        return new NavigationTracker(navigationScheduler, historySink, NAVIGATION_COUNTERS);
+    }
+    
+    // Called by the tab manager for new tabs and when a hibernated tab wakes up;
+    // takes the pool's spare WebView when one is ready
+    private WebView createTabWebView(BrowserTab tab) {
+        if (tab.needsSessionState()) {
+            tab.setSessionState(sessionStore.readState(tab.id));
+        }
+        WebView webView = webViewPool.take();
+        if (webView == null) {
+            webView = createConfiguredWebView();
+        }
+        setupWebView(webView, tab);
+        // A restored back/forward list may reopen on an offline copy
+        allowFileAccess(webView, tab.url());
+        return webView;
+    }
+    
     private void setupPrivacySettings() {
         try {
             CookieManager cookieManager = CookieManager.getInstance();
@@ -505,7 +739,9 @@ public class MainActivity extends Activity {
         }
     }
     
-    private void setupWebView(WebView webView) {
+    // Tab-independent settings, applied to spare WebViews before they belong to a tab
+    private WebView createConfiguredWebView() {
+        WebView webView = new WebView(this);
         try {
             WebSettings settings = webView.getSettings();
             
@@ -519,6 +755,8 @@ public class MainActivity extends Activity {
             settings.setSavePassword(false);
             settings.setSaveFormData(false);
             settings.setGeolocationEnabled(false);
+            // Off except while the tab shows an offline copy (see allowFileAccess)
+            settings.setAllowFileAccess(false);
             settings.setAllowFileAccessFromFileURLs(false);
             settings.setAllowUniversalAccessFromFileURLs(false);
             settings.setMixedContentMode(WebSettings.MIXED_CONTENT_NEVER_ALLOW);
@@ -526,9 +764,37 @@ public class MainActivity extends Activity {
             settings.setCacheMode(WebSettings.LOAD_DEFAULT);
             
             settings.setUserAgentString("Mozilla/5.0 (Android; Mobile; rv:68.0) LibreLynx/1.0");
+            if (rendererProbe) {
+                RendererProbe.install(webView);
+            }
             
-            webView.setWebViewClient(new PrivacyWebViewClient());
+            // Until a tab binds it, a spare only has to survive renderer death
+            webView.setWebViewClient(new WebViewClient() {
+                @Override
+                public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+                    webViewPool.discard(view);
+                    return true;
+                }
+            });
+        } catch (Exception e) {
+            Log.e("MainActivity", "Error in createConfiguredWebView: " + e.getMessage(), e);
+        }
+        return webView;
+    }
+    
+    private void setupWebView(WebView webView, BrowserTab tab) {
+        try {
+            NavigationTracker navigation = tab.navigation;
+            tab.cosmetics = documentStartCosmetics ? new CosmeticScripts(webView, BLOCKLISTS) : null;
+            webView.setWebViewClient(new PrivacyWebViewClient(tab));
             webView.setWebChromeClient(new WebChromeClient() {
+                @Override
+                public void onReceivedTitle(WebView view, String title) {
+                    tab.onTitleChanged(title);
+                    navigation.onTitle(title);
+                    sessionStore.scheduleSave();
+                }
+                
                 @Override
                 public void onProgressChanged(WebView view, int newProgress) {
                     try {
@@ -556,14 +822,14 @@ public class MainActivity extends Activity {
     
     private WebView getActiveWebView() {
         try {
-            if (tabs == null || tabs.isEmpty() || activeTabIndex < 0 || activeTabIndex >= tabs.size()) {
-                Log.e("MainActivity", "Invalid tab state: tabs=" + (tabs == null ? "null" : tabs.size()) + 
-                      ", activeTabIndex=" + activeTabIndex);
+            if (tabManager == null || tabManager.activeTab() == null) {
+                Log.e("MainActivity", "Invalid tab state: tabs=" + (tabManager == null ? "null" : tabManager.size()) + 
+                      ", activeTabIndex=" + (tabManager == null ? -1 : tabManager.activeIndex()));
                 return null;
             }
-            WebView webView = tabs.get(activeTabIndex);
+            WebView webView = tabManager.activeWebView();
             if (webView == null) {
-                Log.e("MainActivity", "Active WebView is null at index: " + activeTabIndex);
+                Log.e("MainActivity", "Active WebView is null at index: " + tabManager.activeIndex());
             }
             return webView;
         } catch (Exception e) {
@@ -572,80 +838,35 @@ public class MainActivity extends Activity {
         }
     }
     
-    // Updated CSS injection method for minimal search interface
-public void injectMinimalCSS(WebView webView) {
-    if (webView == null || webView.getUrl() == null) return;
-
-    String url = webView.getUrl().toLowerCase();
-    String css = createWorkingCSS(url);
-
-    // Only inject CSS if we have rules for this site
-    if (css.trim().isEmpty()) return;
-
-    // Escape CSS for JS injection
-    String escapedCSS = css.replace("\\", "\\\\")
-                          .replace("'", "\\'")
-                          .replace("\"", "\\\"")
-                          .replace("\n", "\\n")
-                          .replace("\r", "");
-
-    // Simple CSS injection without DOM manipulation
-    String jsCode =
-        "(function(){" +
-        "try {" +
-            "var existingStyle = document.getElementById('librelynx-style');" +
-            "if(existingStyle) existingStyle.remove();" +
-            "var style = document.createElement('style');" +
-            "style.id = 'librelynx-style';" +
-            "style.innerHTML = '" + escapedCSS + "';" +
-            "document.head.appendChild(style);" +
-            "console.log('LibreLynx CSS applied successfully');" +
-            "return 'success';" +
-        "} catch(e) {" +
-            "console.error('CSS injection failed:', e);" +
-            "return 'error: ' + e.message;" +
-        "}" +
-        "})()";
-
-    webView.evaluateJavascript(jsCode, result -> {
-        Log.d("CSS Injection", "JavaScript result: " + result);
-    });
-}
-
-private String createWorkingCSS(String url) {
-    String css = "";
-
-    if (url.contains("search.brave.com")) {
-    css += "/* Brave Search minimal UI */" +
-           ".header-button-icon.svelte-2b86ho { display: none !important; }" +  // hide settings cog
-           ".download-cta { display: none !important; }" +                     // hide download CTA
-           "footer.desktop-small-regular.t-tertiary { display: none !important; }" + // hide footer copyright
-           ".desktop-small-regular.t-tertiary { display: none !important; }" +       // hide extra footer links
-           ".content.svelte-6sdecn { display: none !important; }";            // hide Resources / Products / Policies
-}
-
-    if (url.contains("mojeek.com")) {
-    css += "/* Mojeek homepage & search results clean-up */" +
-           ".pop-in.js-pop { display: none !important; }" +
-           "label.popover-label, label[for='settings'] { display: none !important; }" +
-           ".hamburger-ctn { display: none !important; }" +
-           ".bullets { display: none !important; }" +
-           ".para { display: none !important; }" +
-           ".footer.inverted { display: none !important; }" +
-           ".feedback-sticky { display: none !important; }" +
-           ".footer-loc { display: none !important; }" +
-           ".footer { display: none !important; }" +
-           ".scb { display: none !important; }"; 
-}
-
-    return css;
-}
-    // Helper method to check if URL is a search engine
-    private boolean isSearchEngineUrl(String url) {
-        return url != null && (
-            url.contains("search.brave.com") ||
-            url.contains("mojeek.com")
-        );
+    // Puts the tab's cosmetic document-start scripts in place for a top-level load,
+    // so styles apply before first layout. Older WebViews fall back to
+    // injectMinimalCSS from the page callbacks.
+    private void prepareCosmetics(WebView webView, String url) {
+        if (tabManager == null) {
+            return;
+        }
+        for (BrowserTab tab : tabManager.tabs()) {
+            if (tab.webView() == webView) {
+                if (tab.cosmetics != null) {
+                    tab.cosmetics.prepare(url);
+                }
+                return;
+            }
+        }
+    }
+    
+    // Applies the cosmetic rules for the page's host. The script comes pre-escaped
+    // from the engine's cache, so this is a lookup plus one evaluateJavascript call.
+    public void injectMinimalCSS(WebView webView) {
+        if (webView == null || webView.getUrl() == null) return;
+        
+        String host = UrlHosts.host(webView.getUrl());
+        String jsCode = BLOCKLISTS.current().cosmetic.injectionScriptFor(host);
+        if (jsCode == null) return;
+        
+        webView.evaluateJavascript(jsCode, result -> {
+            Log.d("CSS Injection", "JavaScript result: " + result);
+        });
     }
     
     private void setupSwipeRefresh() {
@@ -709,31 +930,34 @@ private String createWorkingCSS(String url) {
             popupMenu.getMenu().add(0, 17, 5, "🔢 Tabs");
             popupMenu.getMenu().add(0, 18, 6, "────────────");
             popupMenu.getMenu().add(0, 6, 7, "⭐ Bookmark This Page");
+            popupMenu.getMenu().add(0, 24, 7, "📥 Save for Offline");
             popupMenu.getMenu().add(0, 4, 8, "📚 Bookmarks");
             popupMenu.getMenu().add(0, 20, 9, "📖 History");
             popupMenu.getMenu().add(0, 21, 10, "🗑️ Clear All History"); // New menu item
             popupMenu.getMenu().add(0, 5, 11, "💾 Downloads");
-            popupMenu.getMenu().add(0, 7, 12, "────────────");
-            popupMenu.getMenu().add(0, 8, 13, R.string.search_engine_title);
-            popupMenu.getMenu().add(0, 9, 14, "Choose Theme");
-            popupMenu.getMenu().add(0, 10, 15, "────────────");
-            popupMenu.getMenu().add(0, 11, 16, "🔒 VPN Mode (Pro)");
-            popupMenu.getMenu().add(0, 12, 17, "🚫 Advanced Ad Blocker (Pro)");
-            popupMenu.getMenu().add(0, 13, 18, "────────────");
-            popupMenu.getMenu().add(0, 15, 19, "⭐ Upgrade to LibreLynx Pro");
+            popupMenu.getMenu().add(0, 22, 12, "🛡️ Blocking Stats");
+            popupMenu.getMenu().add(0, 23, 12, "📦 Import / Export");
+            popupMenu.getMenu().add(0, 7, 13, "────────────");
+            popupMenu.getMenu().add(0, 8, 14, R.string.search_engine_title);
+            popupMenu.getMenu().add(0, 9, 15, "Choose Theme");
+            popupMenu.getMenu().add(0, 10, 16, "────────────");
+            popupMenu.getMenu().add(0, 11, 17, "🔒 VPN Mode (Pro)");
+            popupMenu.getMenu().add(0, 12, 18, "🚫 Advanced Ad Blocker (Pro)");
+            popupMenu.getMenu().add(0, 13, 19, "────────────");
+            popupMenu.getMenu().add(0, 15, 20, "⭐ Upgrade to LibreLynx Pro");
             
             popupMenu.setOnMenuItemClickListener(item -> {
                 switch (item.getItemId()) {
                     case 1:
                         WebView webView = getActiveWebView();
                         if (webView != null && webView.canGoBack()) {
-                            webView.goBack();
+                            goBackOrForward(webView, -1);
                         }
                         return true;
                     case 2:
                         webView = getActiveWebView();
                         if (webView != null && webView.canGoForward()) {
-                            webView.goForward();
+                            goBackOrForward(webView, 1);
                         }
                         return true;
                     case 19:
@@ -754,6 +978,9 @@ private String createWorkingCSS(String url) {
                     case 6:
                         bookmarkCurrentPage();
                         return true;
+                    case 24:
+                        saveCurrentPageOffline();
+                        return true;
                     case 8:
                         showSearchEngineDialog();
                         return true;
@@ -776,11 +1003,15 @@ private String createWorkingCSS(String url) {
                     case 20:
                         showHistoryDialog();
                         return true;
+                    case 22:
+                        showBlockingStatsDialog();
+                        return true;
+                    case 23:
+                        showImportExportDialog();
+                        return true;
                     case 21: // Handle Clear All History
                         try {
-                            browserHistory.clear();
-                            SharedPreferences historyPrefs = getSharedPreferences("LibreLynxHistory", MODE_PRIVATE);
-                            historyPrefs.edit().clear().apply();
+                            clearBrowsingHistory();
                             Toast.makeText(this, "All history cleared", Toast.LENGTH_SHORT).show();
                             Log.d("MainActivity", "Cleared all history from popup menu");
                         } catch (Exception e) {
@@ -814,8 +1045,13 @@ private String createWorkingCSS(String url) {
             popupMenu.show();
         });
         
+        blockedBadge.setOnClickListener(v -> showBlockingStatsDialog());
+        
+        setupAutocomplete();
+        
         urlEditText.setOnKeyListener((v, keyCode, event) -> {
             if (event.getAction() == KeyEvent.ACTION_DOWN && keyCode == KeyEvent.KEYCODE_ENTER) {
+                hideSuggestions();
                 navigateToUrl();
                 return true;
             }
@@ -828,6 +1064,118 @@ private String createWorkingCSS(String url) {
     }
     }
 
+    // Inline completion and a suggestion dropdown for the address bar, fed by history
+    // and bookmarks. Queries run on the autocomplete thread; each keystroke supersedes
+    // the previous one.
+    private void setupAutocomplete() {
+        try {
+            autocomplete = new Autocomplete(historyStore);
+            reloadAutocomplete();
+            
+            suggestionAdapter = new ArrayAdapter<Autocomplete.Match>(this, android.R.layout.simple_list_item_2, new ArrayList<>()) {
+                @Override
+                public View getView(int position, View convertView, ViewGroup parent) {
+                    if (convertView == null) {
+                        convertView = LayoutInflater.from(getContext()).inflate(android.R.layout.simple_list_item_2, parent, false);
+                    }
+                    Autocomplete.Match match = getItem(position);
+                    ((TextView) convertView.findViewById(android.R.id.text1)).setText(match.title);
+                    ((TextView) convertView.findViewById(android.R.id.text2)).setText(match.url);
+                    return convertView;
+                }
+            };
+            suggestionPopup = new ListPopupWindow(this);
+            suggestionPopup.setAnchorView(urlEditText);
+            suggestionPopup.setAdapter(suggestionAdapter);
+            suggestionPopup.setInputMethodMode(ListPopupWindow.INPUT_METHOD_NEEDED);
+            suggestionPopup.setOnItemClickListener((parent, view, position, id) -> {
+                Autocomplete.Match match = suggestionAdapter.getItem(position);
+                hideSuggestions();
+                WebView webView = getActiveWebView();
+                if (match != null && webView != null) {
+                    applyingCompletion = true;
+                    urlEditText.setText(match.url);
+                    applyingCompletion = false;
+                    loadPage(webView, match.url);
+                    Log.d("Autocomplete", "Loading suggestion: " + match.url);
+                }
+            });
+            
+            urlEditText.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                    // Backspace (also over a selected completion) must not re-complete
+                    userDeleting = after == 0 && count > 0;
+                }
+                
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count) {
+                }
+                
+                @Override
+                public void afterTextChanged(Editable s) {
+                    // Ignore our own completions and URL updates from page loads
+                    if (applyingCompletion || !urlEditText.hasFocus()) {
+                        return;
+                    }
+                    String text = s.toString();
+                    if (text.trim().isEmpty()) {
+                        hideSuggestions();
+                        return;
+                    }
+                    autocomplete.query(text, MainActivity.this::showSuggestions);
+                }
+            });
+        } catch (Exception e) {
+            Log.e("Autocomplete", "Error in setupAutocomplete: " + e.getMessage(), e);
+        }
+    }
+    
+    // Rebuilds the suggestion index, e.g. after history was cleared
+    private void reloadAutocomplete() {
+        if (autocomplete != null) {
+            bookmarkStore.readUrls(urls -> autocomplete.load(urls));
+        }
+    }
+    
+    private void showSuggestions(Autocomplete.Result result) {
+        try {
+            Editable text = urlEditText.getText();
+            if (!result.query.equals(text.toString())) {
+                return; // typed on since this query started
+            }
+            String completion = result.inlineCompletion;
+            int end = result.query.length();
+            if (completion != null && !userDeleting && urlEditText.getSelectionEnd() == end
+                    && completion.startsWith(result.query.toLowerCase(Locale.ROOT))) {
+                // Append the rest of the host, selected so the next keystroke replaces it
+                applyingCompletion = true;
+                text.append(completion.substring(end));
+                urlEditText.setSelection(end, completion.length());
+                applyingCompletion = false;
+            }
+            
+            suggestionAdapter.clear();
+            suggestionAdapter.addAll(result.matches);
+            if (result.matches.isEmpty()) {
+                suggestionPopup.dismiss();
+            } else if (!suggestionPopup.isShowing()) {
+                suggestionPopup.show();
+            }
+        } catch (Exception e) {
+            Log.e("Autocomplete", "Error showing suggestions: " + e.getMessage(), e);
+        }
+    }
+    
+    private void hideSuggestions() {
+        if (autocomplete != null) {
+            autocomplete.cancel();
+        }
+        if (suggestionPopup != null && suggestionPopup.isShowing()) {
+            suggestionPopup.dismiss();
+        }
+    }
+    
     // Refresh current page method
     private void refreshCurrentPage() {
         try {
@@ -848,14 +1196,14 @@ private String createWorkingCSS(String url) {
     
     private void openNewTab() {
         try {
-            WebView newWebView = new WebView(this);
-            setupWebView(newWebView);
-            tabs.add(newWebView);
-            activeTabIndex = tabs.size() - 1;
-            switchTab(activeTabIndex);
+            // Measured up to the tab being shown, before the search engine starts loading
+            long start = SystemClock.elapsedRealtimeNanos();
+            boolean pooled = webViewPool.hasSpare();
+            switchTab(tabManager.add(newTab()));
+            NEW_TAB_LATENCY.record(pooled, SystemClock.elapsedRealtimeNanos() - start);
             loadSearchEngine();
             Toast.makeText(this, "New tab opened", Toast.LENGTH_SHORT).show();
-            Log.d("MainActivity", "New tab opened, index: " + activeTabIndex);
+            Log.d("MainActivity", "New tab opened, index: " + tabManager.activeIndex());
         } catch (Exception e) {
             Log.e("MainActivity", "Error in openNewTab: " + e.getMessage(), e);
             Toast.makeText(this, "Error opening new tab", Toast.LENGTH_SHORT).show();
@@ -865,16 +1213,22 @@ private String createWorkingCSS(String url) {
     // Improved tab switching dialog
     private void showImprovedSwitchTabDialog() {
         try {
+            captureActiveTab();
             List<TabItem> tabItems = new ArrayList<>();
+            List<BrowserTab> tabs = tabManager.tabs();
             for (int i = 0; i < tabs.size(); i++) {
-                WebView webView = tabs.get(i);
-                String title = webView.getTitle() != null ? webView.getTitle() : "Tab " + (i + 1);
-                String url = webView.getUrl() != null ? webView.getUrl() : "";
-                tabItems.add(new TabItem(title, url, i));
+                // Hibernated tabs report the title and URL saved when they went to sleep
+                BrowserTab tab = tabs.get(i);
+                String title = tab.title() != null ? tab.title() : "Tab " + (i + 1);
+                if (!tab.isLive()) {
+                    title = "💤 " + title;
+                }
+                String url = tab.url() != null ? tab.url() : "";
+                tabItems.add(new TabItem(title, url, i, tab.id, tab.stats.requestsBlocked()));
             }
 
             AlertDialog.Builder builder = new AlertDialog.Builder(this, R.style.AppTheme_Dialog);
-            builder.setTitle("Tabs (" + tabs.size() + ")");
+            builder.setTitle("Tabs (" + tabs.size() + ") · 🛡 " + GLOBAL_STATS.requestsBlocked() + " blocked");
             
             GridView gridView = new GridView(this);
             gridView.setNumColumns(1);
@@ -899,44 +1253,53 @@ private String createWorkingCSS(String url) {
     }
 
     // Method to close individual tabs
-    private void closeTab(int tabIndex) {
+    // The one path every close goes through: the tab's WebView is always destroyed
+    // and its saved state and thumbnail dropped. Returns false if nothing was closed.
+    private boolean closeTab(long tabId) {
         try {
-            if (tabs.size() <= 1) {
+            if (tabManager.size() <= 1) {
                 Toast.makeText(this, "Cannot close last tab", Toast.LENGTH_SHORT).show();
-                return;
+                return false;
             }
             
-            if (tabIndex >= 0 && tabIndex < tabs.size()) {
-                // Destroy the WebView to free memory
-                WebView webViewToClose = tabs.get(tabIndex);
-                if (webViewToClose != null) {
-                    webViewToClose.clearHistory();
-                    webViewToClose.clearCache(true);
-                    webViewToClose.clearFormData();
-                    webViewToClose.destroy();
-                }
-                
-                tabs.remove(tabIndex);
-                
-                // Adjust active tab index if necessary
-                if (tabIndex <= activeTabIndex) {
-                    activeTabIndex = Math.max(0, activeTabIndex - 1);
-                }
-                
-                // Switch to the adjusted active tab
-                switchTab(activeTabIndex);
-                
-                Toast.makeText(this, "Tab closed", Toast.LENGTH_SHORT).show();
-                Log.d("MainActivity", "Closed tab at index: " + tabIndex + ", remaining tabs: " + tabs.size());
+            int tabIndex = tabManager.indexOf(tabId);
+            if (tabIndex < 0) {
+                return false;
+            }
+            // Clear what the WebView holds before it goes; hibernated tabs have none
+            BrowserTab tabToClose = tabManager.find(tabId);
+            WebView webViewToClose = tabToClose.webView();
+            if (webViewToClose != null) {
+                webViewToClose.clearHistory();
+                webViewToClose.clearCache(true);
+                webViewToClose.clearFormData();
+            }
+            boolean wasActive = tabIndex == tabManager.activeIndex();
+            tabManager.close(tabIndex);
+            sessionStore.tabClosed(tabToClose);
+            tabThumbnails.remove(tabToClose.id);
+            
+            // Switch to the adjusted active tab
+            if (wasActive) {
+                switchTab(tabManager.activeIndex());
+            }
+            
+            Toast.makeText(this, "Tab closed", Toast.LENGTH_SHORT).show();
+            Log.d("MainActivity", "Closed tab at index: " + tabIndex + ", tabs: " + tabManager.describe());
+            if (!tabManager.webViewsAccountedFor()) {
+                Log.w("MainActivity", "WebViews leaked after closing a tab: " + tabManager.describe());
             }
+            return true;
         } catch (Exception e) {
             Log.e("MainActivity", "Error in closeTab: " + e.getMessage(), e);
             Toast.makeText(this, "Error closing tab", Toast.LENGTH_SHORT).show();
+            return false;
         }
     }
     
     private void showTabsDialog() {
         try {
+            captureActiveTab();
             AlertDialog.Builder builder = new AlertDialog.Builder(this, R.style.AppTheme_Dialog);
             View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_tabs, null);
             builder.setView(dialogView);
@@ -964,7 +1327,8 @@ private String createWorkingCSS(String url) {
             AlertDialog dialog = builder.create();
 
             // Custom adapter for tabs with proper click handling
-            ArrayAdapter<WebView> adapter = new ArrayAdapter<WebView>(this, R.layout.tab_item, tabs) {
+            List<BrowserTab> tabs = tabManager.tabs();
+            ArrayAdapter<BrowserTab> adapter = new ArrayAdapter<BrowserTab>(this, R.layout.tab_item, tabs) {
                 @Override
                 public View getView(int position, View convertView, ViewGroup parent) {
                     View view = convertView;
@@ -975,17 +1339,18 @@ private String createWorkingCSS(String url) {
                     TextView titleView = view.findViewById(R.id.tab_title);
                     ImageButton closeButton = view.findViewById(R.id.tab_close_button);
                     ImageView faviconView = view.findViewById(R.id.tab_favicon);
+                    ImageView thumbnailView = view.findViewById(R.id.tab_thumbnail);
 
                     if (titleView == null || closeButton == null || faviconView == null) {
                         Log.e("TabsDialog", "Failed to find tab views in tab_item.xml");
                         return view;
                     }
 
-                    // Set tab title (use WebView title or URL)
-                    WebView webView = tabs.get(position);
-                    String title = webView.getTitle();
+                    // Set tab title (use WebView title or URL, saved ones for hibernated tabs)
+                    BrowserTab tab = tabs.get(position);
+                    String title = tab.title();
                     if (title == null || title.isEmpty() || title.equals("about:blank")) {
-                        title = webView.getUrl() != null ? webView.getUrl() : "New Tab";
+                        title = tab.url() != null ? tab.url() : "New Tab";
                     }
                     
                     // Truncate long titles
@@ -1015,14 +1380,21 @@ private String createWorkingCSS(String url) {
 
                     // Set favicon (placeholder or actual favicon)
                     faviconView.setImageResource(R.drawable.ic_webpage);
+                    if (thumbnailView != null) {
+                        tabThumbnails.bind(thumbnailView, tab.id, 0);
+                    }
                     
                     // Make the main view clickable for tab switching
                     view.setClickable(true);
                     view.setFocusable(true);
+                    long tabId = tab.id;
                     view.setOnClickListener(v -> {
                         Log.d("TabsDialog", "Tab clicked at position: " + position);
                         try {
-                            switchTab(position);
+                            int index = tabManager.indexOf(tabId);
+                            if (index >= 0) {
+                                switchTab(index);
+                            }
                             Toast.makeText(MainActivity.this, "Switched to tab: " + (position + 1), Toast.LENGTH_SHORT).show();
                             dialog.dismiss();
                         } catch (Exception e) {
@@ -1034,24 +1406,14 @@ private String createWorkingCSS(String url) {
                     // Close button click listener
                     closeButton.setOnClickListener(v -> {
                         Log.d("TabsDialog", "Close button clicked for tab at position: " + position);
-                        if (tabs.size() > 1) {
-                            tabs.remove(position);
-                            if (activeTabIndex == position) {
-                                activeTabIndex = Math.max(0, position - 1);
-                                switchTab(activeTabIndex);
-                            } else if (activeTabIndex > position) {
-                                activeTabIndex--;
-                            }
+                        if (closeTab(tabId)) {
                             notifyDataSetChanged();
-                            Toast.makeText(MainActivity.this, "Tab closed", Toast.LENGTH_SHORT).show();
                             Log.d("TabsDialog", "Tab closed, remaining tabs: " + tabs.size());
-                        } else {
-                            Toast.makeText(MainActivity.this, "Cannot close the last tab", Toast.LENGTH_SHORT).show();
                         }
                     });
 
                     // Highlight active tab
-                    if (position == activeTabIndex) {
+                    if (position == tabManager.activeIndex()) {
                         view.setBackgroundColor(ContextCompat.getColor(MainActivity.this, R.color.active_tab_background));
                     } else {
                         view.setBackgroundColor(ContextCompat.getColor(MainActivity.this, android.R.color.transparent));
@@ -1078,22 +1440,74 @@ private String createWorkingCSS(String url) {
         }
     }
     
+    // Snapshots the tab on screen for the tab lists; returns at once
+    private void captureActiveTab() {
+        BrowserTab tab = tabManager != null ? tabManager.activeTab() : null;
+        if (tab != null && tab.webView() != null && tabThumbnails != null) {
+            tabThumbnails.capture(getWindow(), tab.webView(), tab.id);
+        }
+    }
+    
+    // Releases the tab's dead WebView and keeps the tab as a placeholder that reloads
+    // when the user comes back to it. The active tab shows a message until tapped.
+    private void handleRendererGone(BrowserTab tab, WebView view, RenderProcessGoneDetail detail) {
+        try {
+            if (tab.webView() != view) {
+                return; // no longer this tab's WebView
+            }
+            boolean wasActive = tab == tabManager.activeTab();
+            Log.w("MainActivity", "Renderer " + rendererDeaths.record(detail.didCrash(),
+                    detail.rendererPriorityAtExit(), tabManager));
+            tab.onRendererGone();
+            if (wasActive) {
+                showRendererGoneMessage();
+            }
+        } catch (Exception e) {
+            Log.e("MainActivity", "Error in handleRendererGone: " + e.getMessage(), e);
+        }
+    }
+    
+    private void showRendererGoneMessage() {
+        ViewGroup webViewContainer = findViewById(R.id.webview);
+        if (webViewContainer == null) {
+            return;
+        }
+        TextView message = new TextView(this);
+        message.setText("This page was closed to free memory or after a crash.\nTap to reload.");
+        message.setTextSize(16);
+        message.setGravity(Gravity.CENTER);
+        message.setLayoutParams(new ViewGroup.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            ViewGroup.LayoutParams.MATCH_PARENT
+        ));
+        // Switching to the tab wakes it, restoring its history and reloading the page
+        message.setOnClickListener(v -> switchTab(tabManager.activeIndex()));
+        webViewContainer.removeAllViews();
+        webViewContainer.addView(message);
+        progressBar.setVisibility(View.GONE);
+        swipeRefreshLayout.setRefreshing(false);
+    }
+    
     private void switchTab(int index) {
         try {
-            activeTabIndex = index;
             ViewGroup webViewContainer = findViewById(R.id.webview);
             if (webViewContainer == null) {
                 Log.e("MainActivity", "WebView container not found in switchTab");
                 Toast.makeText(this, "Error: WebView container missing", Toast.LENGTH_LONG).show();
                 return;
             }
+            // The outgoing tab is still on screen; its snapshot completes asynchronously
+            captureActiveTab();
             ((ViewGroup) webViewContainer).removeAllViews();
-            WebView activeWebView = getActiveWebView();
+            // Wakes the tab if it was hibernated, possibly hibernating another
+            WebView activeWebView = tabManager.activate(index);
             if (activeWebView != null) {
                 ((ViewGroup) webViewContainer).addView(activeWebView);
                 String currentUrl = activeWebView.getUrl();
                 urlEditText.setText(currentUrl != null && !currentUrl.equals("about:blank") ? currentUrl : "");
                 updateNavigationButtons();
+                updateBlockedBadge();
+                sessionStore.scheduleSave();
                 Log.d("MainActivity", "Switched to tab: " + index);
             } else {
                 Log.e("MainActivity", "Active WebView is null in switchTab");
@@ -1113,7 +1527,7 @@ private String createWorkingCSS(String url) {
                 Toast.makeText(this, "No active tab to bookmark", Toast.LENGTH_SHORT).show();
                 return;
             }
-            String url = webView.getUrl();
+            String url = offlineStore != null ? offlineStore.originalUrl(webView.getUrl()) : webView.getUrl();
             String title = webView.getTitle();
             
             if (url == null || url.isEmpty() || url.equals("about:blank")) {
@@ -1122,200 +1536,501 @@ private String createWorkingCSS(String url) {
                 return;
             }
             
-            SharedPreferences bookmarkPrefs = getSharedPreferences("LibreLynxBookmarks", MODE_PRIVATE);
-            SharedPreferences.Editor editor = bookmarkPrefs.edit();
-            editor.putString(url, title != null && !title.isEmpty() ? title : url);
-            editor.apply();
-            Log.d("Bookmark", "Bookmarked: URL=" + url + ", Title=" + title);
-            Toast.makeText(this, "Page bookmarked!", Toast.LENGTH_SHORT).show();
+            bookmarkStore.add(BookmarkStore.ROOT_ID, title, url, bookmark -> {
+                if (bookmark == null) {
+                    Toast.makeText(this, "Error saving bookmark", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                if (autocomplete != null) {
+                    autocomplete.onBookmark(url, title);
+                }
+                Log.d("Bookmark", "Bookmarked: URL=" + url + ", Title=" + title + ", id=" + bookmark.id);
+                Toast.makeText(this, "Page bookmarked!", Toast.LENGTH_SHORT).show();
+            });
         } catch (Exception e) {
             Log.e("Bookmark", "Error saving bookmark: " + e.getMessage(), e);
             Toast.makeText(this, "Error saving bookmark", Toast.LENGTH_SHORT).show();
         }
     }
     
-    private void showBookmarksDialog() {
+    private void saveCurrentPageOffline() {
         try {
-            Log.d("BookmarksDialog", "Starting showBookmarksDialog");
-            View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_search_engine, null);
-            TextView titleView = dialogView.findViewById(R.id.dialog_title);
-            GridView gridView = dialogView.findViewById(R.id.search_engine_list);
-            
-            if (titleView == null || gridView == null) {
-                Log.e("BookmarksDialog", "Failed to find dialog_title or search_engine_list in dialog_search_engine.xml");
-                Toast.makeText(this, "Error loading bookmarks dialog", Toast.LENGTH_SHORT).show();
+            WebView webView = getActiveWebView();
+            if (webView == null || offlineStore == null) {
+                Toast.makeText(this, "No active tab to save", Toast.LENGTH_SHORT).show();
                 return;
             }
-            
-            Log.d("BookmarksDialog", "Dialog views inflated successfully");
-            titleView.setText("Bookmarks");
-            gridView.setNumColumns(1); // Single column for list-like display
-            gridView.setClickable(true);
-            gridView.setFocusable(true);
-            gridView.setFocusableInTouchMode(true);
-            
-            SharedPreferences bookmarkPrefs = getSharedPreferences("LibreLynxBookmarks", MODE_PRIVATE);
-            Map<String, ?> bookmarks = bookmarkPrefs.getAll();
-            Log.d("BookmarksDialog", "Retrieved bookmarks, size: " + (bookmarks != null ? bookmarks.size() : 0));
-            
-            AlertDialog.Builder builder = new AlertDialog.Builder(this, R.style.AppTheme_Dialog);
-            builder.setView(dialogView);
-            builder.setNegativeButton("Close", (dialog, which) -> {
-                Log.d("BookmarksDialog", "Bookmarks dialog closed");
-            });
-            
-            // Create dialog before setting up adapter
-            AlertDialog dialog = builder.create();
-            
-            if (bookmarks == null || bookmarks.isEmpty()) {
-                Log.d("BookmarksDialog", "No bookmarks found, showing empty message");
-                String[] emptyMessage = {"No bookmarks yet", "Bookmark pages from the menu!"};
-                ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, emptyMessage);
-                gridView.setAdapter(adapter);
-                gridView.setOnItemClickListener(null); // Disable clicks for empty state
-            } else {
-                List<BookmarkItem> bookmarkList = new ArrayList<>();
-                
-                Log.d("BookmarksDialog", "Processing bookmarks");
-                for (Map.Entry<String, ?> entry : bookmarks.entrySet()) {
-                    String url = entry.getKey();
-                    Object value = entry.getValue();
-                    if (url != null && value instanceof String) {
-                        String title = ((String) value).isEmpty() ? url : (String) value;
-                        bookmarkList.add(new BookmarkItem(title, url));
-                        Log.d("BookmarksDialog", "Added bookmark: URL=" + url + ", Title=" + title);
-                    } else {
-                        Log.w("BookmarksDialog", "Skipping invalid bookmark entry: key=" + url + ", value=" + value);
-                    }
+            String url = webView.getUrl();
+            if (offlineStore.isSnapshotUrl(url)) {
+                Toast.makeText(this, "This is already an offline copy", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            if (url == null || !url.startsWith("http")) {
+                Toast.makeText(this, "No page to save", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            offlineStore.save(webView, url, webView.getTitle(), snapshot -> {
+                if (snapshot == null) {
+                    Toast.makeText(this, "Error saving offline copy", Toast.LENGTH_SHORT).show();
+                    return;
                 }
-                
-                // Create custom adapter that handles dialog dismissal
-                BookmarkAdapter adapter = new BookmarkAdapter(this, bookmarkList) {
-                    
-                    // Override showBookmarkMenu to refresh dialog after deletion
-                    private void showBookmarkMenuWithRefresh(BookmarkItem bookmark, int position, View anchorView) {
-                        try {
-                            PopupMenu popupMenu = new PopupMenu(MainActivity.this, anchorView);
-                            popupMenu.getMenu().add(0, 1, 0, "Open");
-                            popupMenu.getMenu().add(0, 2, 1, "Delete");
-                            
-                            popupMenu.setOnMenuItemClickListener(item -> {
-                                switch (item.getItemId()) {
-                                    case 1:
-                                        Log.d("BookmarkMenu", "Open selected for bookmark: " + bookmark.getUrl());
-                                        if (isValidUrl(bookmark.getUrl())) {
-                                            WebView webView = getActiveWebView();
-                                            if (webView != null) {
-                                                webView.loadUrl(bookmark.getUrl());
-                                                urlEditText.setText(bookmark.getUrl());
-                                                Toast.makeText(MainActivity.this, "Loading: " + bookmark.getTitle(), Toast.LENGTH_SHORT).show();
-                                                dialog.dismiss();
-                                            } else {
-                                                Toast.makeText(MainActivity.this, "Error: No active tab", Toast.LENGTH_SHORT).show();
-                                            }
-                                        } else {
-                                            Toast.makeText(MainActivity.this, "Invalid bookmark URL", Toast.LENGTH_SHORT).show();
-                                        }
-                                        return true;
-                                    case 2:
-                                        new AlertDialog.Builder(MainActivity.this, R.style.AppTheme_Dialog)
-                                            .setTitle("Delete Bookmark")
-                                            .setMessage("Delete this bookmark?\n\n" + bookmark.getTitle())
-                                            .setPositiveButton("Delete", (d, w) -> {
-                                                SharedPreferences bookmarkPrefs = getSharedPreferences("LibreLynxBookmarks", MODE_PRIVATE);
-                                                bookmarkPrefs.edit().remove(bookmark.getUrl()).apply();
-                                                Toast.makeText(MainActivity.this, "Bookmark deleted", Toast.LENGTH_SHORT).show();
-                                                dialog.dismiss();
-                                                showBookmarksDialog(); // Refresh the entire dialog
-                                            })
-                                            .setNegativeButton("Cancel", null)
-                                            .show();
-                                        return true;
-                                    default:
-                                        return false;
-                                }
-                            });
-                            
-                            popupMenu.show();
-                        } catch (Exception e) {
-                            Log.e("BookmarkMenu", "Error showing menu: " + e.getMessage(), e);
-                            Toast.makeText(MainActivity.this, "Error showing menu", Toast.LENGTH_SHORT).show();
-                        }
+                Toast.makeText(this, "Saved for offline (" + Math.max(1, snapshot.size / 1024) + " KB)",
+                        Toast.LENGTH_SHORT).show();
+            });
+        } catch (Exception e) {
+            Log.e("Offline", "Error in saveCurrentPageOffline: " + e.getMessage(), e);
+            Toast.makeText(this, "Error saving offline copy", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    // Loads the URL, or its saved copy straight away when the network is down or slow
+    private void loadPage(WebView webView, String url) {
+        if (!showOfflineCopyIfPreferred(webView, url)) {
+            prepareCosmetics(webView, url);
+            allowFileAccess(webView, url);
+            webView.loadUrl(url);
+        }
+    }
+    
+    private boolean showOfflineCopyIfPreferred(WebView webView, String url) {
+        OfflineStore.Snapshot snapshot = offlineStore != null ? offlineStore.find(url) : null;
+        if (snapshot == null || !OfflineStore.preferOffline(this)) {
+            return false;
+        }
+        showOfflineCopy(webView, snapshot);
+        return true;
+    }
+    
+    private void showOfflineCopy(WebView webView, OfflineStore.Snapshot snapshot) {
+        String fileUrl = offlineStore.fileUrl(snapshot);
+        allowFileAccess(webView, fileUrl);
+        webView.loadUrl(fileUrl);
+        offlineStore.markUsed(snapshot);
+        String saved = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(new Date(snapshot.savedAt));
+        Toast.makeText(this, "Offline copy from " + saved, Toast.LENGTH_SHORT).show();
+        Log.d("Offline", "Showing offline copy of " + snapshot.url);
+    }
+    
+    // Saved copies are MHTML files, which WebView only renders from file:// URLs,
+    // not from a virtual https origin. File access is turned on just before a tab
+    // loads a copy and off before it loads anything else: loadPage, link clicks,
+    // back/forward and waking a tab all set it, and onPageStarted catches the
+    // rest. shouldInterceptRequest refuses every other file URL, in any frame.
+    private void allowFileAccess(WebView webView, String url) {
+        webView.getSettings().setAllowFileAccess(offlineStore != null && offlineStore.isSnapshotUrl(url));
+    }
+    
+    // Back/forward navigation does not go through loadUrl, so file access is set
+    // for the entry being returned to first
+    private void goBackOrForward(WebView webView, int steps) {
+        WebBackForwardList list = webView.copyBackForwardList();
+        int index = list.getCurrentIndex() + steps;
+        if (index >= 0 && index < list.getSize()) {
+            allowFileAccess(webView, list.getItemAtIndex(index).getUrl());
+        }
+        webView.goBackOrForward(steps);
+    }
+    
+    // Saved copies record what was visited too, so they go with the history
+    private void clearBrowsingHistory() {
+        historyStore.clear();
+        if (offlineStore != null) {
+            offlineStore.clear();
+        }
+        reloadAutocomplete();
+    }
+    
+    // "Delete Offline Copy" in the history and bookmark menus
+    private void deleteOfflineCopy(String url) {
+        if (offlineStore != null && offlineStore.find(url) != null) {
+            offlineStore.remove(url);
+            Toast.makeText(this, "Offline copy deleted", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    // "Open Offline Copy" in the history and bookmark menus
+    private boolean openOfflineCopy(String url) {
+        OfflineStore.Snapshot snapshot = offlineStore != null ? offlineStore.find(url) : null;
+        WebView webView = getActiveWebView();
+        if (snapshot == null || webView == null) {
+            Toast.makeText(this, "No offline copy available", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        showOfflineCopy(webView, snapshot);
+        return true;
+    }
+    
+    private void showBookmarksDialog() {
+        showBookmarksDialog(BookmarkStore.ROOT_ID, "Bookmarks");
+    }
+    
+    // Opens a folder once its first page has been read
+    private void showBookmarksDialog(long folderId, String folderTitle) {
+        try {
+            Log.d("BookmarksDialog", "Starting showBookmarksDialog for folder " + folderId);
+            bookmarkStore.queryChildren(folderId, null, BOOKMARK_PAGE_SIZE, page -> {
+                if (!isFinishing()) {
+                    showBookmarksDialog(folderId, folderTitle, page);
+                }
+            });
+        } catch (Exception e) {
+            Log.e("BookmarksDialog", "Error in showBookmarksDialog: " + e.getMessage(), e);
+            Toast.makeText(this, "Error loading bookmarks dialog", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    // Changes are applied to the open list in place; further pages load while scrolling
+    private void showBookmarksDialog(long folderId, String folderTitle, BookmarkStore.Page firstPage) {
+        try {
+            View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_search_engine, null);
+            TextView titleView = dialogView.findViewById(R.id.dialog_title);
+            GridView gridView = dialogView.findViewById(R.id.search_engine_list);
+            
+            if (titleView == null || gridView == null) {
+                Log.e("BookmarksDialog", "Failed to find dialog_title or search_engine_list in dialog_search_engine.xml");
+                Toast.makeText(this, "Error loading bookmarks dialog", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            
+            titleView.setText(folderTitle);
+            gridView.setNumColumns(1); // Single column for list-like display
+            gridView.setClickable(true);
+            gridView.setFocusable(true);
+            gridView.setFocusableInTouchMode(true);
+            
+            List<BookmarkItem> bookmarkList = new ArrayList<>();
+            for (BookmarkStore.Bookmark bookmark : firstPage.bookmarks) {
+                bookmarkList.add(new BookmarkItem(bookmark));
+            }
+            
+            AlertDialog.Builder builder = new AlertDialog.Builder(this, R.style.AppTheme_Dialog);
+            builder.setView(dialogView);
+            builder.setNegativeButton("Close", (dialog, which) -> {
+                Log.d("BookmarksDialog", "Bookmarks dialog closed");
+            });
+            if (folderId != BookmarkStore.ROOT_ID) {
+                builder.setPositiveButton("Top Level", (dialog, which) -> showBookmarksDialog());
+            } else {
+                builder.setPositiveButton("New Folder", (dialog, which) -> promptNewFolder(folderId, null));
+            }
+            builder.setNeutralButton("Clear All", (dialogInterface, which) -> {
+                bookmarkStore.clear(cleared -> {
+                    if (cleared) {
+                        reloadAutocomplete();
+                        Toast.makeText(this, "All bookmarks cleared", Toast.LENGTH_SHORT).show();
+                        Log.d("BookmarksDialog", "Cleared all bookmarks");
+                    } else {
+                        Toast.makeText(this, "Error clearing bookmarks", Toast.LENGTH_SHORT).show();
                     }
-                    @Override
-                    public View getView(int position, View convertView, ViewGroup parent) {
-                        View view = super.getView(position, convertView, parent);
-                        
-                        // Override the CardView click to also dismiss dialog
-                        androidx.cardview.widget.CardView cardView = (androidx.cardview.widget.CardView) view;
-                        TextView menuView = view.findViewById(R.id.bookmark_menu);
-                        BookmarkItem bookmark = bookmarkList.get(position);
-                        
-                        cardView.setOnClickListener(v -> {
-                            Log.d("BookmarkAdapter", "Bookmark clicked: " + bookmark.getUrl());
-                            try {
-                                if (isValidUrl(bookmark.getUrl())) {
-                                    WebView webView = getActiveWebView();
-                                    if (webView != null) {
-                                        webView.loadUrl(bookmark.getUrl());
-                                        urlEditText.setText(bookmark.getUrl());
-                                        Log.d("BookmarkAdapter", "Loaded bookmark: " + bookmark.getUrl());
-                                        Toast.makeText(MainActivity.this, "Loading: " + bookmark.getTitle(), Toast.LENGTH_SHORT).show();
-                                        dialog.dismiss(); // Dismiss the dialog
-                                    } else {
-                                        Log.e("BookmarkAdapter", "No active WebView");
-                                        Toast.makeText(MainActivity.this, "Error: No active tab", Toast.LENGTH_SHORT).show();
-                                    }
-                                } else {
-                                    Log.w("BookmarkAdapter", "Invalid URL: " + bookmark.getUrl());
-                                    Toast.makeText(MainActivity.this, "Invalid bookmark URL", Toast.LENGTH_SHORT).show();
-                                }
-                            } catch (Exception e) {
-                                Log.e("BookmarkAdapter", "Error loading bookmark: " + e.getMessage(), e);
-                                Toast.makeText(MainActivity.this, "Error loading bookmark", Toast.LENGTH_SHORT).show();
-                            }
-                        });
-                        
-                        // Override menu click to use the custom method with dialog refresh
-                        if (menuView != null) {
-                            menuView.setOnClickListener(v -> {
-                                Log.d("BookmarkAdapter", "Menu clicked for bookmark: " + bookmark.getUrl());
-                                showBookmarkMenuWithRefresh(bookmark, position, v);
-                            });
+                });
+            });
+            
+            // Create dialog before setting up adapter
+            AlertDialog dialog = builder.create();
+            
+            String[] emptyMessage = {"No bookmarks yet", "Bookmark pages from the menu!"};
+            ArrayAdapter<String> emptyAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, emptyMessage);
+            
+            BookmarkAdapter adapter = new BookmarkAdapter(this, bookmarkList) {
+                @Override
+                public View getView(int position, View convertView, ViewGroup parent) {
+                    View view = super.getView(position, convertView, parent);
+                    
+                    // Override the CardView click to also dismiss dialog
+                    androidx.cardview.widget.CardView cardView = (androidx.cardview.widget.CardView) view;
+                    TextView menuView = view.findViewById(R.id.bookmark_menu);
+                    BookmarkItem bookmark = bookmarkList.get(position);
+                    
+                    cardView.setOnClickListener(v -> {
+                        if (bookmark.isFolder()) {
+                            dialog.dismiss();
+                            showBookmarksDialog(bookmark.getId(), bookmark.getTitle());
+                        } else if (openBookmark(bookmark)) {
+                            dialog.dismiss();
                         }
-                        
-                        return view;
+                    });
+                    
+                    if (menuView != null) {
+                        menuView.setOnClickListener(v -> showBookmarkItemMenu(bookmark, this, gridView, emptyAdapter, folderId, dialog, v));
                     }
-                };
+                    return view;
+                }
+            };
+            gridView.setAdapter(bookmarkList.isEmpty() ? emptyAdapter : adapter);
+            // Lets promptNewFolder reach this list
+            gridView.setTag(adapter);
+            
+            // Last page of the folder shown, null while search results are shown
+            BookmarkStore.Page[] lastPage = {firstPage};
+            gridView.setOnScrollListener(new AbsListView.OnScrollListener() {
+                private boolean loading;
                 
-                gridView.setAdapter(adapter);
+                @Override
+                public void onScrollStateChanged(AbsListView view, int scrollState) {
+                }
                 
-                builder.setNeutralButton("Clear All", (dialogInterface, which) -> {
-                    try {
-                        bookmarkPrefs.edit().clear().apply();
-                        Toast.makeText(this, "All bookmarks cleared", Toast.LENGTH_SHORT).show();
-                        Log.d("BookmarksDialog", "Cleared all bookmarks");
-                        dialog.dismiss();
-                        showBookmarksDialog(); // Refresh dialog
-                    } catch (Exception e) {
-                        Log.e("BookmarksDialog", "Error clearing bookmarks: " + e.getMessage(), e);
-                        Toast.makeText(this, "Error clearing bookmarks", Toast.LENGTH_SHORT).show();
+                @Override
+                public void onScroll(AbsListView view, int firstVisible, int visibleCount, int totalCount) {
+                    BookmarkStore.Page after = lastPage[0];
+                    if (loading || after == null || !after.hasMore || firstVisible + visibleCount < totalCount - 10) {
+                        return;
+                    }
+                    loading = true;
+                    bookmarkStore.queryChildren(folderId, after, BOOKMARK_PAGE_SIZE, page -> {
+                        loading = false;
+                        if (lastPage[0] != after) {
+                            return; // a search replaced the list meanwhile
+                        }
+                        lastPage[0] = page;
+                        for (BookmarkStore.Bookmark bookmark : page.bookmarks) {
+                            bookmarkList.add(new BookmarkItem(bookmark));
+                        }
+                        adapter.notifyDataSetChanged();
+                    });
+                }
+            });
+            
+            // Searches every folder, not just this one
+            EditText searchField = dialogView.findViewById(R.id.dialog_search);
+            setupDialogSearch(searchField, "Search bookmarks", query -> {
+                if (query.isEmpty()) {
+                    bookmarkStore.queryChildren(folderId, null, BOOKMARK_PAGE_SIZE, page -> {
+                        if (isCurrentSearch(searchField, query)) {
+                            lastPage[0] = page;
+                            showBookmarkResults(bookmarkList, page.bookmarks, adapter, gridView, emptyAdapter);
+                            titleView.setText(folderTitle);
+                        }
+                    });
+                    return;
+                }
+                bookmarkStore.search(query, SEARCH_RESULT_LIMIT, results -> {
+                    if (isCurrentSearch(searchField, query)) {
+                        lastPage[0] = null;
+                        showBookmarkResults(bookmarkList, results, adapter, gridView, null);
+                        titleView.setText(searchResultTitle("Bookmarks", results.size()));
                     }
                 });
-            }
+            });
             
             dialog.show();
-            Log.d("BookmarksDialog", "Bookmarks dialog shown successfully");
+            Log.d("BookmarksDialog", "Bookmarks dialog shown with " + bookmarkList.size() + " items");
         } catch (Exception e) {
             Log.e("BookmarksDialog", "Error in showBookmarksDialog: " + e.getMessage(), e);
             Toast.makeText(this, "Error loading bookmarks dialog", Toast.LENGTH_SHORT).show();
         }
     }
+    
+    // Loads a bookmark in the active tab; true if it was opened
+    private boolean openBookmark(BookmarkItem bookmark) {
+        try {
+            if (!isValidUrl(bookmark.getUrl())) {
+                Log.w("BookmarkAdapter", "Invalid URL: " + bookmark.getUrl());
+                Toast.makeText(this, "Invalid bookmark URL", Toast.LENGTH_SHORT).show();
+                return false;
+            }
+            WebView webView = getActiveWebView();
+            if (webView == null) {
+                Log.e("BookmarkAdapter", "No active WebView");
+                Toast.makeText(this, "Error: No active tab", Toast.LENGTH_SHORT).show();
+                return false;
+            }
+            loadPage(webView, bookmark.getUrl());
+            urlEditText.setText(bookmark.getUrl());
+            Log.d("BookmarkAdapter", "Loaded bookmark: " + bookmark.getUrl());
+            Toast.makeText(this, "Loading: " + bookmark.getTitle(), Toast.LENGTH_SHORT).show();
+            return true;
+        } catch (Exception e) {
+            Log.e("BookmarkAdapter", "Error loading bookmark: " + e.getMessage(), e);
+            Toast.makeText(this, "Error loading bookmark", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+    }
+    
+    // Item actions in the bookmarks dialog; results are applied to the adapter directly
+    private void showBookmarkItemMenu(BookmarkItem bookmark, BookmarkAdapter adapter, GridView gridView,
+                                      ListAdapter emptyAdapter, long folderId, AlertDialog dialog, View anchorView) {
+        try {
+            PopupMenu popupMenu = new PopupMenu(this, anchorView);
+            popupMenu.getMenu().add(0, 1, 0, "Open");
+            if (!bookmark.isFolder() && offlineStore != null && offlineStore.find(bookmark.getUrl()) != null) {
+                popupMenu.getMenu().add(0, 5, 1, "Open Offline Copy");
+                popupMenu.getMenu().add(0, 6, 5, "Delete Offline Copy");
+            }
+            popupMenu.getMenu().add(0, 2, 2, "Delete");
+            popupMenu.getMenu().add(0, 3, 3, "Move to Folder");
+            popupMenu.getMenu().add(0, 4, 4, "New Folder");
+            
+            popupMenu.setOnMenuItemClickListener(item -> {
+                switch (item.getItemId()) {
+                    case 1:
+                        if (bookmark.isFolder()) {
+                            dialog.dismiss();
+                            showBookmarksDialog(bookmark.getId(), bookmark.getTitle());
+                        } else if (openBookmark(bookmark)) {
+                            dialog.dismiss();
+                        }
+                        return true;
+                    case 5:
+                        if (openOfflineCopy(bookmark.getUrl())) {
+                            dialog.dismiss();
+                        }
+                        return true;
+                    case 6:
+                        deleteOfflineCopy(bookmark.getUrl());
+                        return true;
+                    case 2:
+                        new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
+                            .setTitle(bookmark.isFolder() ? "Delete Folder" : "Delete Bookmark")
+                            .setMessage((bookmark.isFolder() ? "Delete this folder and everything in it?\n\n"
+                                    : "Delete this bookmark?\n\n") + bookmark.getTitle())
+                            .setPositiveButton("Delete", (d, w) -> bookmarkStore.remove(bookmark.getId(), removed -> {
+                                if (removed != null) {
+                                    forgetBookmarks(removed);
+                                    removeBookmarkItem(bookmark, adapter, gridView, emptyAdapter);
+                                    Toast.makeText(this, "Bookmark deleted", Toast.LENGTH_SHORT).show();
+                                } else {
+                                    Toast.makeText(this, "Error deleting bookmark", Toast.LENGTH_SHORT).show();
+                                }
+                            }))
+                            .setNegativeButton("Cancel", null)
+                            .show();
+                        return true;
+                    case 3:
+                        showMoveToFolderDialog(bookmark, adapter, gridView, emptyAdapter, folderId);
+                        return true;
+                    case 4:
+                        promptNewFolder(folderId, gridView);
+                        return true;
+                    default:
+                        return false;
+                }
+            });
+            
+            popupMenu.show();
+        } catch (Exception e) {
+            Log.e("BookmarkMenu", "Error showing menu: " + e.getMessage(), e);
+            Toast.makeText(this, "Error showing menu", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    // emptyAdapter replaces the list when there are no bookmarks; null keeps it, e.g. for search results
+    private void showBookmarkResults(List<BookmarkItem> bookmarkList, List<BookmarkStore.Bookmark> bookmarks,
+                                     BookmarkAdapter adapter, GridView gridView, ListAdapter emptyAdapter) {
+        bookmarkList.clear();
+        for (BookmarkStore.Bookmark bookmark : bookmarks) {
+            bookmarkList.add(new BookmarkItem(bookmark));
+        }
+        adapter.notifyDataSetChanged();
+        ListAdapter shown = bookmarkList.isEmpty() && emptyAdapter != null ? emptyAdapter : adapter;
+        if (gridView.getAdapter() != shown) {
+            gridView.setAdapter(shown);
+        }
+        gridView.setSelection(0);
+    }
+    
+    // Updates suggestions for URLs that are no longer bookmarked
+    private void forgetBookmarks(List<String> urls) {
+        for (String url : urls) {
+            autocomplete.onBookmarkRemoved(url);
+        }
+    }
+    
+    private void removeBookmarkItem(BookmarkItem bookmark, BookmarkAdapter adapter, GridView gridView, ListAdapter emptyAdapter) {
+        adapter.remove(bookmark);
+        if (adapter.getCount() == 0) {
+            gridView.setAdapter(emptyAdapter);
+        }
+    }
+    
+    private void showMoveToFolderDialog(BookmarkItem bookmark, BookmarkAdapter adapter, GridView gridView,
+                                        ListAdapter emptyAdapter, long folderId) {
+        bookmarkStore.queryFolders(folders -> {
+            List<String> names = new ArrayList<>();
+            List<Long> ids = new ArrayList<>();
+            if (folderId != BookmarkStore.ROOT_ID) {
+                names.add("Top Level");
+                ids.add(BookmarkStore.ROOT_ID);
+            }
+            for (BookmarkStore.Bookmark folder : folders) {
+                if (folder.id != folderId && folder.id != bookmark.getId()) {
+                    names.add("📁 " + folder.title);
+                    ids.add(folder.id);
+                }
+            }
+            if (names.isEmpty()) {
+                Toast.makeText(this, "Create a folder first", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
+                .setTitle("Move to Folder")
+                .setItems(names.toArray(new String[0]), (d, which) -> bookmarkStore.move(bookmark.getId(), ids.get(which), moved -> {
+                    if (moved) {
+                        removeBookmarkItem(bookmark, adapter, gridView, emptyAdapter);
+                        Toast.makeText(this, "Moved to " + names.get(which), Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(this, "Cannot move there", Toast.LENGTH_SHORT).show();
+                    }
+                }))
+                .setNegativeButton("Cancel", null)
+                .show();
+        });
+    }
+    
+    // Asks for a name and appends the folder; if the folder's list is open it is
+    // inserted into it, otherwise the list is reopened to show it
+    private void promptNewFolder(long parentId, GridView gridView) {
+        EditText nameInput = new EditText(this);
+        nameInput.setHint("Folder name");
+        nameInput.setSingleLine(true);
+        new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
+            .setTitle("New Folder")
+            .setView(nameInput)
+            .setPositiveButton("Create", (d, w) -> {
+                String name = nameInput.getText().toString().trim();
+                if (name.isEmpty()) {
+                    Toast.makeText(this, "Folder name is empty", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                bookmarkStore.addFolder(parentId, name, folder -> {
+                    if (folder == null) {
+                        Toast.makeText(this, "Error creating folder", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    if (gridView != null && gridView.getTag() instanceof BookmarkAdapter) {
+                        BookmarkAdapter adapter = (BookmarkAdapter) gridView.getTag();
+                        adapter.add(new BookmarkItem(folder));
+                        if (gridView.getAdapter() != adapter) {
+                            gridView.setAdapter(adapter);
+                        }
+                    } else {
+                        showBookmarksDialog(parentId, "Bookmarks");
+                    }
+                    Toast.makeText(this, "Folder created", Toast.LENGTH_SHORT).show();
+                });
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
 
-    // Show history dialog
+    // Show history dialog once the store has read the most recent entries
     private void showHistoryDialog() {
         try {
             Log.d("HistoryDialog", "Starting showHistoryDialog");
+            historyStore.queryPage(null, HISTORY_PAGE_SIZE, page -> {
+                if (!isFinishing()) {
+                    showHistoryDialog(page);
+                }
+            });
+        } catch (Exception e) {
+            Log.e("HistoryDialog", "Error in showHistoryDialog: " + e.getMessage(), e);
+            Toast.makeText(this, "Error loading history dialog", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    // Shows the first page ranked by frecency; further pages load while scrolling
+    private void showHistoryDialog(HistoryStore.Page firstPage) {
+        try {
+            List<HistoryStore.Entry> entries = firstPage.entries;
             View dialogView = LayoutInflater.from(this).inflate(R.layout.dialog_search_engine, null);
             TextView titleView = dialogView.findViewById(R.id.dialog_title);
             GridView gridView = dialogView.findViewById(R.id.search_engine_list);
@@ -1333,8 +2048,6 @@ private String createWorkingCSS(String url) {
             gridView.setFocusable(true);
             gridView.setFocusableInTouchMode(true);
             
-            SharedPreferences historyPrefs = getSharedPreferences("LibreLynxHistory", MODE_PRIVATE);
-            
             AlertDialog.Builder builder = new AlertDialog.Builder(this, R.style.AppTheme_Dialog);
             builder.setView(dialogView);
             builder.setNegativeButton("Close", (dialog, which) -> {
@@ -1344,7 +2057,7 @@ private String createWorkingCSS(String url) {
             // Create dialog before setting up adapter
             AlertDialog dialog = builder.create();
             
-            if (browserHistory.isEmpty()) {
+            if (entries.isEmpty()) {
                 Log.d("HistoryDialog", "No history found, showing empty message");
                 String[] emptyMessage = {"No history yet", "Visit some websites to see them here!"};
                 ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, emptyMessage);
@@ -1354,11 +2067,10 @@ private String createWorkingCSS(String url) {
                 List<BookmarkItem> historyList = new ArrayList<>();
                 
                 Log.d("HistoryDialog", "Processing history items");
-                for (String url : browserHistory) {
-                    String title = historyPrefs.getString(url, url);
-                    historyList.add(new BookmarkItem(title, url));
-                    Log.d("HistoryDialog", "Added history item: URL=" + url + ", Title=" + title);
+                for (HistoryStore.Entry entry : entries) {
+                    historyList.add(new BookmarkItem(entry.title, entry.url));
                 }
+                Log.d("HistoryDialog", "Loaded " + historyList.size() + " history items");
                 
                 // Create custom adapter that handles dialog dismissal
                 BookmarkAdapter adapter = new BookmarkAdapter(this, historyList) {
@@ -1377,7 +2089,7 @@ private String createWorkingCSS(String url) {
                                 if (isValidUrl(historyItem.getUrl())) {
                                     WebView webView = getActiveWebView();
                                     if (webView != null) {
-                                        webView.loadUrl(historyItem.getUrl());
+                                        loadPage(webView, historyItem.getUrl());
                                         urlEditText.setText(historyItem.getUrl());
                                         Log.d("HistoryAdapter", "Loaded history item: " + historyItem.getUrl());
                                         Toast.makeText(MainActivity.this, "Loading: " + historyItem.getTitle(), Toast.LENGTH_SHORT).show();
@@ -1409,11 +2121,61 @@ private String createWorkingCSS(String url) {
                 };
                 
                 gridView.setAdapter(adapter);
+                // Last page shown while browsing by frecency, null while search results are shown
+                HistoryStore.Page[] lastPage = {firstPage};
+                gridView.setOnScrollListener(new AbsListView.OnScrollListener() {
+                    private boolean loading;
+                    
+                    @Override
+                    public void onScrollStateChanged(AbsListView view, int scrollState) {
+                    }
+                    
+                    @Override
+                    public void onScroll(AbsListView view, int firstVisible, int visibleCount, int totalCount) {
+                        HistoryStore.Page after = lastPage[0];
+                        if (loading || after == null || !after.hasMore || firstVisible + visibleCount < totalCount - 10) {
+                            return;
+                        }
+                        loading = true;
+                        historyStore.queryPage(after, HISTORY_PAGE_SIZE, page -> {
+                            loading = false;
+                            if (lastPage[0] != after) {
+                                return; // a search replaced the list meanwhile
+                            }
+                            lastPage[0] = page;
+                            for (HistoryStore.Entry entry : page.entries) {
+                                historyList.add(new BookmarkItem(entry.title, entry.url));
+                            }
+                            adapter.notifyDataSetChanged();
+                            Log.d("HistoryDialog", "Loaded " + page.entries.size() + " more history items");
+                        });
+                    }
+                });
+                
+                EditText searchField = dialogView.findViewById(R.id.dialog_search);
+                setupDialogSearch(searchField, "Search history", query -> {
+                    if (query.isEmpty()) {
+                        historyStore.queryPage(null, HISTORY_PAGE_SIZE, page -> {
+                            if (isCurrentSearch(searchField, query)) {
+                                lastPage[0] = page;
+                                showHistoryResults(historyList, page.entries, adapter, gridView);
+                                titleView.setText("History");
+                            }
+                        });
+                        return;
+                    }
+                    historyStore.search(query, SEARCH_RESULT_LIMIT, results -> {
+                        if (isCurrentSearch(searchField, query)) {
+                            lastPage[0] = null;
+                            showHistoryResults(historyList, results, adapter, gridView);
+                            titleView.setText(searchResultTitle("History", results.size()));
+                        }
+                    });
+                });
                 
                 builder.setNeutralButton("Clear All", (dialogInterface, which) -> {
                     try {
-                        browserHistory.clear();
-                        historyPrefs.edit().clear().apply();
+                        clearBrowsingHistory();
                         Toast.makeText(this, "History cleared", Toast.LENGTH_SHORT).show();
                         Log.d("HistoryDialog", "Cleared all history");
                         dialog.dismiss();
@@ -1432,12 +2194,69 @@ private String createWorkingCSS(String url) {
         }
     }
 
+    private void showHistoryResults(List<BookmarkItem> historyList, List<HistoryStore.Entry> entries,
+                                    BookmarkAdapter adapter, GridView gridView) {
+        historyList.clear();
+        for (HistoryStore.Entry entry : entries) {
+            historyList.add(new BookmarkItem(entry.title, entry.url));
+        }
+        adapter.notifyDataSetChanged();
+        gridView.setSelection(0);
+    }
+    
+    // Shows the dialog's search field and reports the trimmed text once typing pauses.
+    // Results arrive asynchronously, so callers drop those for text that has since changed.
+    private void setupDialogSearch(EditText searchField, String hint, ResultCallback<String> onQuery) {
+        if (searchField == null) {
+            return;
+        }
+        searchField.setVisibility(View.VISIBLE);
+        searchField.setHint(hint);
+        searchField.addTextChangedListener(new TextWatcher() {
+            private Runnable pending;
+            
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+            
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (pending != null) {
+                    mainHandler.removeCallbacks(pending);
+                }
+                String query = s.toString().trim();
+                pending = () -> onQuery.onResult(query);
+                mainHandler.postDelayed(pending, SEARCH_DEBOUNCE_MS);
+            }
+        });
+    }
+    
+    private static boolean isCurrentSearch(EditText searchField, String query) {
+        return searchField.isAttachedToWindow() && query.equals(searchField.getText().toString().trim());
+    }
+    
+    private static String searchResultTitle(String label, int count) {
+        if (count == 0) {
+            return label + ": no matches";
+        }
+        return label + ": " + (count >= SEARCH_RESULT_LIMIT ? "top " + count : Integer.toString(count))
+                + (count == 1 ? " match" : " matches");
+    }
+    
     // Show history menu
     private void showHistoryMenu(BookmarkItem historyItem, int position, View anchorView, AlertDialog parentDialog) {
         try {
             PopupMenu popupMenu = new PopupMenu(this, anchorView);
             popupMenu.getMenu().add(0, 1, 0, "Open");
-            popupMenu.getMenu().add(0, 2, 1, "Remove from History");
+            if (offlineStore != null && offlineStore.find(historyItem.getUrl()) != null) {
+                popupMenu.getMenu().add(0, 3, 1, "Open Offline Copy");
+                popupMenu.getMenu().add(0, 4, 3, "Delete Offline Copy");
+            }
+            popupMenu.getMenu().add(0, 2, 2, "Remove from History");
             
             popupMenu.setOnMenuItemClickListener(item -> {
                 switch (item.getItemId()) {
@@ -1446,7 +2265,7 @@ private String createWorkingCSS(String url) {
                         if (isValidUrl(historyItem.getUrl())) {
                             WebView webView = getActiveWebView();
                             if (webView != null) {
-                                webView.loadUrl(historyItem.getUrl());
+                                loadPage(webView, historyItem.getUrl());
                                 urlEditText.setText(historyItem.getUrl());
                                 Toast.makeText(this, "Loading: " + historyItem.getTitle(), Toast.LENGTH_SHORT).show();
                                 parentDialog.dismiss();
@@ -1457,25 +2276,22 @@ private String createWorkingCSS(String url) {
                             Toast.makeText(this, "Invalid history URL", Toast.LENGTH_SHORT).show();
                         }
                         return true;
+                    case 3:
+                        if (openOfflineCopy(historyItem.getUrl())) {
+                            parentDialog.dismiss();
+                        }
+                        return true;
+                    case 4:
+                        deleteOfflineCopy(historyItem.getUrl());
+                        return true;
                     case 2:
                         // Show confirmation dialog for deletion
                         new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
                             .setTitle("Remove from History")
                             .setMessage("Remove this item from history?\n\n" + historyItem.getTitle())
                             .setPositiveButton("Remove", (d, w) -> {
-                                browserHistory.remove(historyItem.getUrl());
-                                SharedPreferences historyPrefs = getSharedPreferences("LibreLynxHistory", MODE_PRIVATE);
-                                SharedPreferences.Editor editor = historyPrefs.edit();
-                                editor.remove(historyItem.getUrl());
-                                
-                                // Update the ordered list
-                                StringBuilder historyString = new StringBuilder();
-                                for (int i = 0; i < browserHistory.size(); i++) {
-                                    if (i > 0) historyString.append("|");
-                                    historyString.append(browserHistory.get(i));
-                                }
-                                editor.putString("history_order", historyString.toString());
-                                editor.apply();
+                                historyStore.remove(historyItem.getUrl());
+                                autocomplete.onRemoved(historyItem.getUrl());
                                 
                                 Toast.makeText(this, "Removed from history", Toast.LENGTH_SHORT).show();
                                 parentDialog.dismiss();
@@ -1496,58 +2312,89 @@ private String createWorkingCSS(String url) {
         }
     }
 
-    private void showBookmarkMenu(BookmarkItem bookmark, int position, View anchorView) {
+    // Coalesces badge refreshes requested from the IO thread into one UI update per interval
+    private void scheduleBadgeUpdate() {
+        if (badgeUpdatePending.compareAndSet(false, true)) {
+            mainHandler.postDelayed(badgeUpdater, BADGE_UPDATE_INTERVAL_MS);
+        }
+    }
+    
+    private final Runnable badgeUpdater = () -> {
+        badgeUpdatePending.set(false);
+        updateBlockedBadge();
+    };
+    
+    // Shows how many requests were blocked on the active tab's current page
+    private void updateBlockedBadge() {
         try {
-            PopupMenu popupMenu = new PopupMenu(this, anchorView); // Use the passed anchor view
-            popupMenu.getMenu().add(0, 1, 0, "Open");
-            popupMenu.getMenu().add(0, 2, 1, "Delete");
+            if (blockedBadge == null) {
+                return;
+            }
+            BrowserTab activeTab = tabManager != null ? tabManager.activeTab() : null;
+            BlockingStats stats = activeTab != null ? activeTab.stats : null;
+            long count = stats != null ? stats.blockedOnPage() : 0;
+            if (count > 0) {
+                blockedBadge.setText("🛡 " + count);
+                blockedBadge.setVisibility(View.VISIBLE);
+            } else {
+                blockedBadge.setVisibility(View.GONE);
+            }
+        } catch (Exception e) {
+            Log.e("MainActivity", "Error updating blocked badge: " + e.getMessage(), e);
+        }
+    }
+    
+    private void showBlockingStatsDialog() {
+        try {
+            StringBuilder message = new StringBuilder();
+            BrowserTab activeTab = tabManager.activeTab();
+            if (activeTab != null) {
+                appendStats(message, "This tab", activeTab.stats);
+                message.append("\n");
+            }
+            appendStats(message, "All tabs", GLOBAL_STATS);
             
-            popupMenu.setOnMenuItemClickListener(item -> {
-                switch (item.getItemId()) {
-                    case 1:
-                        Log.d("BookmarkMenu", "Open selected for bookmark: " + bookmark.getUrl());
-                        if (isValidUrl(bookmark.getUrl())) {
-                            WebView webView = getActiveWebView();
-                            if (webView != null) {
-                                webView.loadUrl(bookmark.getUrl());
-                                urlEditText.setText(bookmark.getUrl());
-                                Log.d("BookmarkMenu", "Opened bookmark: " + bookmark.getUrl());
-                                Toast.makeText(this, "Loading: " + bookmark.getTitle(), Toast.LENGTH_SHORT).show();
-                            } else {
-                                Log.e("BookmarkMenu", "No active WebView");
-                                Toast.makeText(this, "Error: No active tab", Toast.LENGTH_SHORT).show();
-                            }
-                        } else {
-                            Log.w("BookmarkMenu", "Invalid URL: " + bookmark.getUrl());
-                            Toast.makeText(this, "Invalid bookmark URL", Toast.LENGTH_SHORT).show();
-                        }
-                        return true;
-                    case 2:
-                        // Show confirmation dialog for deletion
-                        new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
-                            .setTitle("Delete Bookmark")
-                            .setMessage("Are you sure you want to delete this bookmark?\n\n" + bookmark.getTitle())
-                            .setPositiveButton("Delete", (dialog, which) -> {
-                                SharedPreferences bookmarkPrefs = getSharedPreferences("LibreLynxBookmarks", MODE_PRIVATE);
-                                bookmarkPrefs.edit().remove(bookmark.getUrl()).apply();
-                                Toast.makeText(this, "Bookmark deleted", Toast.LENGTH_SHORT).show();
-                                Log.d("BookmarkMenu", "Deleted bookmark: " + bookmark.getUrl());
-                                // Note: You might want to refresh the dialog here or pass a callback to update the list
-                            })
-                            .setNegativeButton("Cancel", null)
-                            .show();
-                        return true;
-                    default:
-                        return false;
+            List<BlockingStats.HostCount> topHosts = GLOBAL_STATS.topHosts(10);
+            if (!topHosts.isEmpty()) {
+                message.append("\nTop blocked hosts\n");
+                for (BlockingStats.HostCount host : topHosts) {
+                    message.append("• ").append(host.host).append("  ").append(host.count).append("\n");
                 }
-            });
+            }
+            message.append("\nActive rules: ").append(BLOCKLISTS.current().size())
+                .append(" network, ").append(BLOCKLISTS.current().cosmetic.size()).append(" cosmetic");
             
-            popupMenu.show();
-            Log.d("BookmarkMenu", "Bookmark menu shown for: " + bookmark.getUrl());
+            new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
+                .setTitle("Blocking Stats")
+                .setMessage(message.toString())
+                .setPositiveButton("OK", null)
+                .setNeutralButton("Reset", (dialog, which) -> {
+                    GLOBAL_STATS.reset();
+                    for (BrowserTab tab : tabManager.tabs()) {
+                        tab.stats.reset();
+                    }
+                    updateBlockedBadge();
+                    Toast.makeText(this, "Blocking stats reset", Toast.LENGTH_SHORT).show();
+                })
+                .show();
+            Log.d("MainActivity", "Blocking stats dialog shown");
         } catch (Exception e) {
-            Log.e("BookmarkMenu", "Error in showBookmarkMenu: " + e.getMessage(), e);
-            Toast.makeText(this, "Error showing bookmark menu: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+            Log.e("MainActivity", "Error showing blocking stats: " + e.getMessage(), e);
+            Toast.makeText(this, "Error loading blocking stats", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    private static void appendStats(StringBuilder out, String label, BlockingStats stats) {
+        long seen = stats.requestsSeen();
+        long blocked = stats.requestsBlocked();
+        out.append(label).append("\n");
+        out.append("Requests seen: ").append(seen).append("\n");
+        out.append("Requests blocked: ").append(blocked);
+        if (seen > 0) {
+            out.append(String.format(Locale.ROOT, " (%.1f%%)", blocked * 100.0 / seen));
         }
+        out.append("\n");
+        out.append("Estimated data saved: ").append(BlockingStats.formatBytes(stats.estimatedBytesAvoided())).append("\n");
     }
     
     private boolean isValidUrl(String url) {
@@ -1617,20 +2464,16 @@ private String createWorkingCSS(String url) {
                 return;
             }
             
-            String url;
-            if (isUrl(input)) {
-                if (!input.startsWith("http://") && !input.startsWith("https://")) {
-                    url = "https://" + input;
-                } else {
-                    url = input;
-                }
-            } else {
-                url = getSearchUrl(input);
-            }
+            String url = AddressInput.toUrl(input, currentSearchEngine);
             
             WebView webView = getActiveWebView();
+            if (webView == null && tabManager.activeTab() != null) {
+                // The tab lost its renderer; bring it back to navigate in it
+                switchTab(tabManager.activeIndex());
+                webView = getActiveWebView();
+            }
             if (webView != null) {
-                webView.loadUrl(url);
+                loadPage(webView, url);
                 Log.d("Navigate", "Loading URL: " + url);
             } else {
                 Log.e("Navigate", "No active WebView");
@@ -1642,22 +2485,6 @@ private String createWorkingCSS(String url) {
         }
     }
     
-    private boolean isUrl(String input) {
-        return input.contains(".") && !input.contains(" ") && 
-               (input.startsWith("http") || input.contains("www") || input.matches(".*\\.[a-zA-Z]{2,}.*"));
-    }
-    
-    private String getSearchUrl(String query) {
-    String encodedQuery = Uri.encode(query);
-    switch (currentSearchEngine) {
-        case "brave":
-            return BRAVE_SEARCH + encodedQuery;
-        case "mojeek":
-            return MOJEEK_SEARCH + encodedQuery;
-        default:
-            return BRAVE_SEARCH + encodedQuery; // default search engine
-    }
-}
     private void loadSearchEngine() {
         try {
             WebView webView = getActiveWebView();
@@ -1678,7 +2505,9 @@ switch (currentSearchEngine) {
         url = "https://search.brave.com"; // default fallback
         break;
 }
+prepareCosmetics(webView, url);
 webView.loadUrl(url);
+startupTrace.onNavigation(url);
 urlEditText.setText("");
 Log.d("MainActivity", "Loaded search engine: " + currentSearchEngine + ", URL: " + url);
 
@@ -1897,6 +2726,130 @@ gridView.setAdapter(adapter);
         }
     }
     
+    // Files are picked through the Storage Access Framework, so no storage permission is needed
+    private void showImportExportDialog() {
+        String[] options = {
+            "Import bookmarks (HTML)",
+            "Export bookmarks (HTML)",
+            "Import history (JSON lines)",
+            "Export history (JSON lines)"
+        };
+        new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
+            .setTitle("Import / Export")
+            .setItems(options, (dialog, which) -> {
+                try {
+                    switch (which) {
+                        case 0:
+                            startActivityForResult(openDocumentIntent("text/html"), IMPORT_BOOKMARKS_REQUEST);
+                            break;
+                        case 1:
+                            startActivityForResult(createDocumentIntent("text/html", "bookmarks.html"),
+                                    EXPORT_BOOKMARKS_REQUEST);
+                            break;
+                        case 2:
+                            startActivityForResult(openDocumentIntent("*/*"), IMPORT_HISTORY_REQUEST);
+                            break;
+                        case 3:
+                            startActivityForResult(createDocumentIntent("application/x-ndjson", "history.jsonl"),
+                                    EXPORT_HISTORY_REQUEST);
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (ActivityNotFoundException e) {
+                    Log.e("ImportExport", "No document picker: " + e.getMessage(), e);
+                    Toast.makeText(this, "No file picker available", Toast.LENGTH_SHORT).show();
+                }
+            })
+            .setNegativeButton("Cancel", null)
+            .show();
+    }
+    
+    private static Intent openDocumentIntent(String mimeType) {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(mimeType);
+        return intent;
+    }
+    
+    private static Intent createDocumentIntent(String mimeType, String fileName) {
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(mimeType);
+        intent.putExtra(Intent.EXTRA_TITLE, fileName);
+        return intent;
+    }
+    
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode < IMPORT_BOOKMARKS_REQUEST || requestCode > EXPORT_HISTORY_REQUEST) {
+            return;
+        }
+        Uri uri = data != null ? data.getData() : null;
+        if (resultCode != RESULT_OK || uri == null) {
+            return;
+        }
+        try {
+            boolean importing = requestCode == IMPORT_BOOKMARKS_REQUEST || requestCode == IMPORT_HISTORY_REQUEST;
+            String what = requestCode <= EXPORT_BOOKMARKS_REQUEST ? "bookmarks" : "history entries";
+            String verb = importing ? "Imported" : "Exported";
+            AlertDialog progressDialog = new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
+                .setTitle(importing ? "Importing" : "Exporting")
+                .setMessage("Starting…")
+                .setCancelable(false)
+                .show();
+            DataTransfer.Progress progress = processed -> {
+                if (progressDialog.isShowing()) {
+                    progressDialog.setMessage(processed + " " + what + "…");
+                }
+            };
+            ResultCallback<DataTransfer.Result> done = result -> {
+                if (progressDialog.isShowing()) {
+                    progressDialog.dismiss();
+                }
+                if (importing) {
+                    reloadAutocomplete();
+                }
+                showTransferResult(verb, what, result);
+            };
+            switch (requestCode) {
+                case IMPORT_BOOKMARKS_REQUEST:
+                    bookmarkStore.importHtml(getContentResolver().openInputStream(uri), progress, done);
+                    break;
+                case EXPORT_BOOKMARKS_REQUEST:
+                    bookmarkStore.exportHtml(getContentResolver().openOutputStream(uri, "wt"), progress, done);
+                    break;
+                case IMPORT_HISTORY_REQUEST:
+                    historyStore.importJsonLines(getContentResolver().openInputStream(uri), progress, done);
+                    break;
+                default:
+                    historyStore.exportJsonLines(getContentResolver().openOutputStream(uri, "wt"), progress, done);
+                    break;
+            }
+        } catch (Exception e) {
+            Log.e("ImportExport", "Error opening file: " + e.getMessage(), e);
+            Toast.makeText(this, "Error opening file", Toast.LENGTH_SHORT).show();
+        }
+    }
+    
+    private void showTransferResult(String verb, String what, DataTransfer.Result result) {
+        StringBuilder message = new StringBuilder();
+        message.append(verb).append(" ").append(result.added).append(" ").append(what);
+        if (result.skipped > 0) {
+            message.append("\nSkipped ").append(result.skipped).append(" duplicates or unsupported entries");
+        }
+        if (result.error != null) {
+            message.append("\n\nStopped early: ").append(result.error);
+        }
+        new AlertDialog.Builder(this, R.style.AppTheme_Dialog)
+            .setTitle(result.error != null ? "Transfer incomplete" : "Transfer complete")
+            .setMessage(message.toString())
+            .setPositiveButton("OK", null)
+            .show();
+        Log.d("ImportExport", message.toString());
+    }
+    
     private void checkPermissions() {
         try {
             if (ContextCompat.checkSelfPermission(this, Manifest.permission.INTERNET) 
@@ -1917,11 +2870,9 @@ gridView.setAdapter(adapter);
         try {
             WebView webView = getActiveWebView();
             if (webView != null && webView.canGoBack()) {
-                webView.goBack();
-            } else if (tabs.size() > 1) {
-                tabs.remove(activeTabIndex);
-                activeTabIndex = Math.max(0, activeTabIndex - 1);
-                switchTab(activeTabIndex);
+                goBackOrForward(webView, -1);
+            } else if (tabManager.size() > 1) {
+                closeTab(tabManager.activeTab().id);
             } else {
                 super.onBackPressed();
             }
@@ -1931,18 +2882,85 @@ gridView.setAdapter(adapter);
         }
     }
     
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Commit batched history before the process may be killed
+        if (tabManager != null) {
+            for (BrowserTab tab : tabManager.tabs()) {
+                tab.navigation.commitNow();
+            }
+        }
+        if (historyStore != null) {
+            historyStore.flush();
+        }
+        if (sessionStore != null) {
+            sessionStore.saveNow();
+        }
+        captureActiveTab();
+        if (tabManager != null) {
+            // Read before the timers are paused
+            if (rendererProbe) {
+                HIDDEN_TAB_WORK.stop(tabManager, work -> Log.d("TabManager", "Foreground: " + work));
+            }
+            // Nothing is on screen now, so the active tab is throttled like the others
+            tabManager.pauseAll();
+        }
+        Log.d("History", "Navigation: " + NAVIGATION_COUNTERS);
+        Log.d("WebViewPool", "Latency: " + NEW_TAB_LATENCY);
+    }
+    
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Also undoes the process-wide timer pause left by a recreated activity
+        if (tabManager != null) {
+            tabManager.resumeAll();
+            if (rendererProbe) {
+                HIDDEN_TAB_WORK.start(tabManager);
+            }
+        }
+    }
+    
+    // Hibernates background tabs and drops spare WebViews and cached thumbnails
+    // while the system is short of memory
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (tabManager != null) {
+            tabManager.onTrimMemory(level);
+        }
+        if (webViewPool != null) {
+            webViewPool.onTrimMemory(level);
+        }
+        if (tabThumbnails != null) {
+            tabThumbnails.onTrimMemory(level);
+        }
+    }
+    
     @Override
     protected void onDestroy() {
         try {
-            for (WebView webView : tabs) {
-                if (webView != null) {
-                    webView.clearHistory();
-                    webView.clearCache(true);
-                    webView.clearFormData();
-                    webView.destroy();
+            if (sessionStore != null) {
+                sessionStore.shutDown();
+            }
+            if (webViewPool != null) {
+                webViewPool.clear();
+            }
+            if (tabManager != null) {
+                for (BrowserTab tab : tabManager.tabs()) {
+                    WebView webView = tab.webView();
+                    if (webView != null) {
+                        webView.clearHistory();
+                        webView.clearCache(true);
+                        webView.clearFormData();
+                    }
                 }
+                tabManager.destroyAll();
+            }
+            if (appRouter != null) {
+                appRouter.unregister();
             }
-            tabs.clear();
             Log.d("MainActivity", "Destroyed WebViews and cleared tabs");
         } catch (Exception e) {
             Log.e("MainActivity", "Error in onDestroy: " + e.getMessage(), e);
@@ -1950,12 +2968,58 @@ gridView.setAdapter(adapter);
         super.onDestroy();
     }
     
+    // 204 with an empty body, served for blocked requests without touching the network
+    private static WebResourceResponse emptyResponse() {
+        return new WebResourceResponse("text/plain", "utf-8", 204, "No Content",
+                Collections.<String, String>emptyMap(), new ByteArrayInputStream(EMPTY_BODY));
+    }
+    
     private class PrivacyWebViewClient extends WebViewClient {
+        // Host of the top-level document, written on navigation and read from the IO thread
+        private volatile String pageHost = "";
+        private final BrowserTab tab;
+        private final BlockingStats stats;
+        private final NavigationTracker navigation;
+        // The page started without its document-start styles and needs them injected
+        private boolean injectCosmetics;
+        
+        PrivacyWebViewClient(BrowserTab tab) {
+            this.tab = tab;
+            this.stats = tab.stats;
+            this.navigation = tab.navigation;
+        }
+        
+        // The shared renderer died; every WebView using it gets this call for itself.
+        // Returning true keeps the app alive, which then must not touch the view again.
+        @Override
+        public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+            handleRendererGone(tab, view, detail);
+            return true;
+        }
+        
+        // Fires for new documents and same-document changes (pushState, fragments);
+        // the title is not known yet and follows through onReceivedTitle
+        @Override
+        public void doUpdateVisitedHistory(WebView view, String url, boolean isReload) {
+            super.doUpdateVisitedHistory(view, url, isReload);
+            tab.onUrlChanged(url);
+            if (!isOfflineCopy(url)) {
+                navigation.onNavigated(url, null);
+            }
+            sessionStore.tabChanged(tab);
+        }
+        
         @Override
         public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
             try {
                 super.onPageStarted(view, url, favicon);
-                urlEditText.setText(url);
+                pageHost = UrlHosts.host(url);
+                // Catches redirects and reloads the other paths did not see
+                allowFileAccess(view, url);
+                // Back/forward and other loads that bypass prepareCosmetics
+                injectCosmetics = tab.cosmetics == null || !tab.cosmetics.prepare(url);
+                // An offline copy shows the address it was saved from
+                urlEditText.setText(offlineStore != null ? offlineStore.originalUrl(url) : url);
                 progressBar.setVisibility(View.VISIBLE);
                 updateNavigationButtons();
                 Log.d("PrivacyWebViewClient", "Page started: " + url);
@@ -1964,6 +3028,23 @@ gridView.setAdapter(adapter);
             }
         }
         
+        // First callback on the new document: the earliest point the fallback can
+        // inject without hitting the previous page (API 23+)
+        @Override
+        public void onPageCommitVisible(WebView view, String url) {
+            try {
+                super.onPageCommitVisible(view, url);
+                if (injectCosmetics) {
+                    injectMinimalCSS(view);
+                }
+                // A page has painted, so spare WebViews no longer compete with startup
+                webViewPool.fill();
+                startupTrace.onPageVisible();
+            } catch (Exception e) {
+                Log.e("PrivacyWebViewClient", "Error in onPageCommitVisible: " + e.getMessage(), e);
+            }
+        }
+        
         @Override
         public void onPageFinished(WebView view, String url) {
             try {
@@ -1972,14 +3053,16 @@ gridView.setAdapter(adapter);
                 swipeRefreshLayout.setRefreshing(false);
                 updateNavigationButtons();
                 
-                // Inject CSS for search engines after page loads
-                if (isSearchEngineUrl(url)) {
-                    view.postDelayed(() -> injectMinimalCSS(view), 100);
+                // Fallback for pages that started without document-start scripts;
+                // repeats what onPageCommitVisible installed
+                if (injectCosmetics) {
+                    injectMinimalCSS(view);
                 }
                 
-                // Add to history when page finishes loading
-                String title = view.getTitle();
-                addToHistory(url, title);
+                // Usually a duplicate of doUpdateVisitedHistory; the tracker drops it
+                if (!isOfflineCopy(url)) {
+                    navigation.onNavigated(url, view.getTitle());
+                }
                 
                 Log.d("PrivacyWebViewClient", "Page finished: " + url);
             } catch (Exception e) {
@@ -1993,97 +3076,144 @@ gridView.setAdapter(adapter);
         try {
             if (isTrackingDomain(url)) {
                 Log.w("PrivacyWebViewClient", "Blocked tracker: " + url);
-                Toast.makeText(MainActivity.this, R.string.blocked_tracker, Toast.LENGTH_SHORT).show();
+                // Counted as seen too, so blocked never exceeds seen
+                stats.recordSeen();
+                GLOBAL_STATS.recordSeen();
+                recordBlocked(UrlHosts.host(url), ResourceType.DOCUMENT);
                 return true;
             }
 
-            Intent intent = null;
-
-            // YouTube
-            if (url.contains("youtube.com") || url.contains("youtu.be")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.google.android.youtube");
-            }
-
-            // Twitter
-            else if (url.contains("twitter.com")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.twitter.android");
-            }
-
-            // Instagram
-            else if (url.contains("instagram.com")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.instagram.android");
-            }
-
-            // Facebook
-            else if (url.contains("facebook.com")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.facebook.katana");
-            }
-
-            // Reddit
-            else if (url.contains("reddit.com")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.reddit.frontpage");
-            }
-
-            // Spotify
-            else if (url.contains("spotify.com")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.spotify.music");
-            }
-
-            // Netflix
-            else if (url.contains("netflix.com")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.netflix.mediaclient");
-            }
-
-            // Amazon
-            else if (url.contains("amazon.com") || url.contains("amazon.co.uk")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.amazon.mShop.android.shopping");
-            }
-
-            // GitHub
-            else if (url.contains("github.com")) {
-                intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
-                intent.setPackage("com.github.android");
-            }
-
-            // Fallback: open in system browser if matched but app missing
+            // Hand off to the site's app when it is installed, otherwise stay in-app
+            Intent intent = appRouter != null ? appRouter.intentFor(url) : null;
             if (intent != null) {
                 try {
                     MainActivity.this.startActivity(intent);
+                    return true;
                 } catch (ActivityNotFoundException e) {
-                    MainActivity.this.startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url)));
+                    Log.w("PrivacyWebViewClient", "Handoff failed, loading in-app: " + url);
                 }
-                return true;
             }
 
-            return false;
+            return showOfflineCopyIfPreferred(view, url);
         } catch (Exception e) {
             Log.e("PrivacyWebViewClient", "Error in shouldOverrideUrlLoading: " + e.getMessage(), e);
             return false;
         }
     }
-           private boolean isTrackingDomain(String url) {
-            String[] trackers = {
-                "google-analytics.com",
-                "googletagmanager.com", 
-                "facebook.com/tr",
-                "doubleclick.net",
-                "googlesyndication.com"
-            };
-            
-            for (String tracker : trackers) {
-                if (url.contains(tracker)) {
-                    return true;
+    
+    // API 24+: a link or redirect about to load in this tab's top-level frame gets
+    // its site styles registered and file access set before the new document exists
+    @Override
+    public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
+        String url = request.getUrl().toString();
+        boolean handled = shouldOverrideUrlLoading(view, url);
+        if (!handled && request.isForMainFrame()) {
+            allowFileAccess(view, url);
+            if (tab.cosmetics != null) {
+                tab.cosmetics.prepare(url);
+            }
+        }
+        return handled;
+    }
+        // Runs on the WebView IO thread for every sub-resource: no locks, no logging
+        // on the allow path and no allocation beyond the request URL string.
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+            try {
+                if (request == null || request.getUrl() == null) {
+                    return null;
                 }
+                if (rendererProbe && !tab.isVisible()) {
+                    HIDDEN_TAB_WORK.requests.increment();
+                }
+                String url = request.getUrl().toString();
+                // File access is on while a tab shows an offline copy, so frames and
+                // sub-resources of that page are checked too
+                if (url.startsWith("file:") && !isOfflineCopy(url)) {
+                    Log.w("PrivacyWebViewClient", "Blocked file URL: " + url);
+                    return emptyResponse();
+                }
+                if (request.isForMainFrame()) {
+                    // Main-frame requests arrive before any of their sub-resources
+                    pageHost = UrlHosts.host(url);
+                    stats.startPage();
+                    scheduleBadgeUpdate();
+                    return null;
+                }
+                if (!url.startsWith("http")) {
+                    return null;
+                }
+                stats.recordSeen();
+                GLOBAL_STATS.recordSeen();
+                
+                int hostStart = UrlHosts.hostStart(url);
+                int hostEnd = UrlHosts.hostEnd(url, hostStart);
+                if (hostEnd <= hostStart || !isTracker(url, hostStart, hostEnd)) {
+                    return null;
+                }
+                
+                // Let sites load their own tracker-hosted resources when visited directly
+                String firstParty = pageHost;
+                if (!firstParty.isEmpty()
+                        && UrlHosts.sameSite(url, hostStart, hostEnd, firstParty, 0, firstParty.length())) {
+                    return null;
+                }
+                
+                ResourceType type = ResourceType.classify(url, request.isForMainFrame());
+                recordBlocked(url.substring(hostStart, hostEnd).toLowerCase(Locale.ROOT), type);
+                return emptyResponse();
+            } catch (Exception e) {
+                Log.e("PrivacyWebViewClient", "Error in shouldInterceptRequest: " + e.getMessage(), e);
+                return null;
             }
-            return false;
+        }
+        
+        // The page could not be reached; show its saved copy if there is one
+        @Override
+        public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error) {
+            try {
+                super.onReceivedError(view, request, error);
+                if (!request.isForMainFrame() || offlineStore == null) {
+                    return;
+                }
+                int code = error.getErrorCode();
+                if (code != ERROR_HOST_LOOKUP && code != ERROR_CONNECT && code != ERROR_TIMEOUT) {
+                    return;
+                }
+                OfflineStore.Snapshot snapshot = offlineStore.find(request.getUrl().toString());
+                if (snapshot != null) {
+                    Log.d("PrivacyWebViewClient", "Network error " + code + ", falling back to offline copy");
+                    showOfflineCopy(view, snapshot);
+                }
+            } catch (Exception e) {
+                Log.e("PrivacyWebViewClient", "Error in onReceivedError: " + e.getMessage(), e);
+            }
+        }
+        
+        private boolean isOfflineCopy(String url) {
+            OfflineStore store = offlineStore;
+            return store != null && store.isSnapshotUrl(url);
+        }
+        
+        private void recordBlocked(String host, ResourceType type) {
+            stats.recordBlocked(host, type);
+            GLOBAL_STATS.recordBlocked(host, type);
+            scheduleBadgeUpdate();
+        }
+        
+        // Host-suffix lookup, cost depends on the number of labels in the host
+        private boolean isTrackingDomain(String url) {
+            if (url == null || url.isEmpty()) {
+                return false;
+            }
+            int hostStart = UrlHosts.hostStart(url);
+            int hostEnd = UrlHosts.hostEnd(url, hostStart);
+            return hostEnd > hostStart && isTracker(url, hostStart, hostEnd);
+        }
+        
+        // Lock-free read of the current snapshot; only built-in rules until the first load
+        private boolean isTracker(String url, int hostStart, int hostEnd) {
+            return BLOCKLISTS.current().matches(url, hostStart, hostEnd);
         }
     }
 }
@@ -0,0 +1,245 @@
+package com.librelynx.lite;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Precompiled host blocklist queried in place through a MappedByteBuffer.
+//
+// Large lists never become Java Strings: the file is mapped read-only and lookups
+// read bytes straight from the page cache. A Bloom filter sits in front of the hash
+// table so the common "not blocked" answer costs a few bit tests and never touches
+// the table or the string pool.
+//
+// Layout (big endian):
+//   header   32 bytes  magic, version, source stamp, entry count,
+//                      bloom size (log2 bits), bloom hash count, table slots
+//   bloom    (1 << bloomBitsLog2) / 8 bytes
+//   table    slots * 8 bytes, each {int hash, int string offset + 1 (0 = empty)}
+//   strings  {u8 length, ASCII bytes} per domain
+//
+// Hashes are the same right-to-left host hash HostMatcher uses, so one walk over the
+// host checks every parent domain.
+final class MappedBlocklist implements Blocklist {
+
+    static final int MAGIC = 0x4C4C4231; // "LLB1"
+    static final int VERSION = 2; // 2: element-hiding lines are no longer read as hosts
+    private static final int HEADER_SIZE = 32;
+    private static final int BLOOM_HASHES = 7;
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+
+    private final MappedByteBuffer buffer;
+    private final long sourceStamp;
+    private final int size;
+    private final int bloomMask;
+    private final int bloomHashes;
+    private final int tableOffset;
+    private final int tableMask;
+    private final int stringsOffset;
+
+    private MappedBlocklist(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a blocklist file");
+        }
+        sourceStamp = buffer.getLong(8);
+        size = buffer.getInt(16);
+        int bloomBitsLog2 = buffer.getInt(20);
+        bloomHashes = buffer.getInt(24);
+        int slots = buffer.getInt(28);
+        if (bloomBitsLog2 < 3 || bloomBitsLog2 > 30 || Integer.bitCount(slots) != 1) {
+            throw new IOException("Corrupt blocklist header");
+        }
+        bloomMask = (1 << bloomBitsLog2) - 1;
+        tableOffset = HEADER_SIZE + (1 << bloomBitsLog2) / 8;
+        tableMask = slots - 1;
+        stringsOffset = tableOffset + slots * 8;
+        if (stringsOffset > buffer.capacity()) {
+            throw new IOException("Truncated blocklist file");
+        }
+    }
+
+    static MappedBlocklist open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the channel is closed
+            return new MappedBlocklist(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    long sourceStamp() {
+        return sourceStamp;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean matches(String url, int hostStart, int hostEnd) {
+        if (size == 0) {
+            return false;
+        }
+        int hash = 0;
+        int second = 0x811c9dc5;
+        for (int i = hostEnd - 1; i >= hostStart; i--) {
+            char c = UrlHosts.lower(url.charAt(i));
+            hash = 31 * hash + c;
+            second = (second ^ c) * 0x01000193;
+            if ((i == hostStart || url.charAt(i - 1) == '.')
+                    && mightContain(hash, second) && probe(url, i, hostEnd, hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean mightContain(int hash, int second) {
+        int step = second | 1;
+        for (int k = 0; k < bloomHashes; k++) {
+            int bit = (hash + k * step) & bloomMask;
+            if ((buffer.get(HEADER_SIZE + (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean probe(String url, int from, int hostEnd, int hash) {
+        int length = hostEnd - from;
+        int slot = HostMatcher.mix(hash) & tableMask;
+        while (true) {
+            int entry = tableOffset + slot * 8;
+            int offset = buffer.getInt(entry + 4);
+            if (offset == 0) {
+                return false;
+            }
+            if (buffer.getInt(entry) == hash && equalsAt(stringsOffset + offset - 1, url, from, length)) {
+                return true;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    private boolean equalsAt(int position, String url, int from, int length) {
+        if ((buffer.get(position) & 0xff) != length) {
+            return false;
+        }
+        for (int j = 0; j < length; j++) {
+            if ((buffer.get(position + 1 + j) & 0xff) != UrlHosts.lower(url.charAt(from + j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Compiles a text list (one rule per line, see HostMatcher.normalizeRule) into the
+    // binary format. Path rules and non-ASCII hosts are skipped. The file is written
+    // next to the target and renamed, so readers never see a partial file.
+    static int compile(BufferedReader source, File target, long sourceStamp) throws IOException {
+        Set<String> seen = new HashSet<>();
+        List<String> domains = new ArrayList<>();
+        String line;
+        while ((line = source.readLine()) != null) {
+            String rule = HostMatcher.normalizeRule(line);
+            if (rule == null || rule.indexOf('/') >= 0 || rule.length() > 255 || !isAscii(rule)) {
+                continue;
+            }
+            if (seen.add(rule)) {
+                domains.add(rule);
+            }
+        }
+
+        int count = domains.size();
+        int bloomBitsLog2 = 10;
+        while ((1L << bloomBitsLog2) < (long) count * BLOOM_BITS_PER_ENTRY && bloomBitsLog2 < 30) {
+            bloomBitsLog2++;
+        }
+        int slots = 16;
+        while (slots < count * 2) {
+            slots <<= 1;
+        }
+        byte[] bloom = new byte[(1 << bloomBitsLog2) / 8];
+        int bloomMask = (1 << bloomBitsLog2) - 1;
+        int[] tableHashes = new int[slots];
+        int[] tableOffsets = new int[slots];
+        int stringOffset = 0;
+
+        for (String domain : domains) {
+            int hash = 0;
+            int second = 0x811c9dc5;
+            for (int i = domain.length() - 1; i >= 0; i--) {
+                char c = domain.charAt(i);
+                hash = 31 * hash + c;
+                second = (second ^ c) * 0x01000193;
+            }
+            int step = second | 1;
+            for (int k = 0; k < BLOOM_HASHES; k++) {
+                int bit = (hash + k * step) & bloomMask;
+                bloom[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+            int slot = HostMatcher.mix(hash) & (slots - 1);
+            while (tableOffsets[slot] != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            tableHashes[slot] = hash;
+            tableOffsets[slot] = stringOffset + 1;
+            stringOffset += 1 + domain.length();
+        }
+
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File temp = new File(target.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceStamp);
+            out.writeInt(count);
+            out.writeInt(bloomBitsLog2);
+            out.writeInt(BLOOM_HASHES);
+            out.writeInt(slots);
+            out.write(bloom);
+            for (int i = 0; i < slots; i++) {
+                out.writeInt(tableHashes[i]);
+                out.writeInt(tableOffsets[i]);
+            }
+            for (String domain : domains) {
+                out.writeByte(domain.length());
+                out.writeBytes(domain);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + target);
+        }
+        return count;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
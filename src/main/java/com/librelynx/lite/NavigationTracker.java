@@ -0,0 +1,160 @@
+package com.librelynx.lite;
+
+import android.os.Handler;
+
+// Turns one tab's stream of navigation callbacks into history writes.
+//
+// A single click can finish several documents (redirect pages, history.pushState
+// route changes, fragment jumps) and WebView reports the same document through
+// both doUpdateVisitedHistory and onPageFinished. Committed URLs are held for
+// SETTLE_MS first: another URL arriving in that window replaces the pending one,
+// so a redirect chain becomes one visit to where it ended up. URLs that differ
+// from the last visit only by fragment are dropped. The title usually arrives
+// after the commit, so onReceivedTitle updates the pending visit in place, or the
+// stored row once it has been written.
+//
+// Main thread only.
+final class NavigationTracker {
+
+    interface Sink {
+        void onVisit(String url, String title);
+        void onTitle(String url, String title);
+    }
+
+    // Runs the settle timer; a Handler in the app, a manual clock in tests
+    interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+        void cancel(Runnable task);
+
+        static Scheduler of(Handler handler) {
+            return new Scheduler() {
+                @Override
+                public void postDelayed(Runnable task, long delayMs) {
+                    handler.postDelayed(task, delayMs);
+                }
+
+                @Override
+                public void cancel(Runnable task) {
+                    handler.removeCallbacks(task);
+                }
+            };
+        }
+    }
+
+    // Shared by all tabs; compare events with visits + titleUpdates to see how many
+    // callbacks never reached storage
+    static final class Counters {
+        long events;
+        long duplicates; // same document or fragment-only change
+        long coalesced;  // replaced by a later URL while settling
+        long visits;
+        long titleUpdates;
+
+        void reset() {
+            events = 0;
+            duplicates = 0;
+            coalesced = 0;
+            visits = 0;
+            titleUpdates = 0;
+        }
+
+        @Override
+        public String toString() {
+            return events + " navigation events, " + visits + " visits, " + titleUpdates + " title updates ("
+                    + duplicates + " duplicate, " + coalesced + " coalesced)";
+        }
+    }
+
+    static final long SETTLE_MS = 1000;
+
+    private final Scheduler scheduler;
+    private final Sink sink;
+    private final Counters counters;
+
+    private String pendingUrl;
+    private String pendingTitle;
+    private String lastUrl;
+    private String lastTitle;
+
+    private final Runnable commitTask = this::commit;
+
+    NavigationTracker(Scheduler scheduler, Sink sink, Counters counters) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.counters = counters;
+    }
+
+    // A document or same-document URL was committed; title may be null
+    void onNavigated(String url, String title) {
+        if (url == null || url.isEmpty() || url.equals("about:blank")) {
+            return;
+        }
+        counters.events++;
+        String base = pendingUrl != null ? pendingUrl : lastUrl;
+        if (base != null && sameDocument(base, url)) {
+            counters.duplicates++;
+            if (pendingUrl != null) {
+                updatePendingTitle(title);
+            }
+            return;
+        }
+        if (pendingUrl != null) {
+            counters.coalesced++;
+            scheduler.cancel(commitTask);
+        }
+        pendingUrl = url;
+        pendingTitle = isUsableTitle(title, url) ? title : null;
+        scheduler.postDelayed(commitTask, SETTLE_MS);
+    }
+
+    void onTitle(String title) {
+        if (pendingUrl != null) {
+            updatePendingTitle(title);
+            return;
+        }
+        if (lastUrl == null || !isUsableTitle(title, lastUrl) || title.equals(lastTitle)) {
+            return;
+        }
+        lastTitle = title;
+        counters.titleUpdates++;
+        sink.onTitle(lastUrl, title);
+    }
+
+    // Writes the pending visit without waiting, e.g. before the app is paused
+    void commitNow() {
+        scheduler.cancel(commitTask);
+        commit();
+    }
+
+    private void commit() {
+        if (pendingUrl == null) {
+            return;
+        }
+        lastUrl = pendingUrl;
+        lastTitle = pendingTitle;
+        pendingUrl = null;
+        pendingTitle = null;
+        counters.visits++;
+        sink.onVisit(lastUrl, lastTitle);
+    }
+
+    private void updatePendingTitle(String title) {
+        if (isUsableTitle(title, pendingUrl)) {
+            pendingTitle = title;
+        }
+    }
+
+    // WebView reports the URL as the title until the page sets one
+    private static boolean isUsableTitle(String title, String url) {
+        return title != null && !title.isEmpty() && !title.equals(url) && !title.equals(stripFragment(url));
+    }
+
+    static boolean sameDocument(String a, String b) {
+        return stripFragment(a).equals(stripFragment(b));
+    }
+
+    static String stripFragment(String url) {
+        int hash = url.indexOf('#');
+        return hash < 0 ? url : url.substring(0, hash);
+    }
+}
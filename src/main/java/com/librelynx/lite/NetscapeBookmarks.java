@@ -0,0 +1,371 @@
+package com.librelynx.lite;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// The Netscape bookmark file format ("bookmarks.html") that every browser exports:
+//
+//   <DL><p>
+//       <DT><H3 ADD_DATE="1690000000">Folder</H3>
+//       <DL><p>
+//           <DT><A HREF="https://example.com/" ADD_DATE="1690000000">Title</A>
+//       </DL><p>
+//   </DL><p>
+//
+// The reader is a streaming tag scanner rather than an HTML parser: it only acts on
+// H3, A and DL tags and passes entries to a Visitor as it reaches them. Tags and
+// text are capped, so favicon data URIs and broken files cannot grow memory.
+final class NetscapeBookmarks {
+
+    interface Visitor {
+        void onFolderStart(String title, long addDate) throws IOException;
+
+        void onFolderEnd() throws IOException;
+
+        // addDate in milliseconds, 0 if missing
+        void onBookmark(String title, String url, long addDate) throws IOException;
+    }
+
+    private static final int MAX_TAG = 64 * 1024;
+    private static final int MAX_TEXT = 4096;
+
+    private NetscapeBookmarks() {
+    }
+
+    static void read(Reader in, Visitor visitor) throws IOException {
+        new Scanner(in, visitor).run();
+    }
+
+    private static final class Scanner {
+        private final Reader in;
+        private final Visitor visitor;
+        private final StringBuilder tag = new StringBuilder();
+        private final StringBuilder text = new StringBuilder();
+        // One entry per open DL: true if it is the body of a folder
+        private final List<Boolean> lists = new ArrayList<>();
+        private String pendingFolder;
+        private long pendingFolderDate;
+
+        Scanner(Reader in, Visitor visitor) {
+            this.in = in;
+            this.visitor = visitor;
+        }
+
+        void run() throws IOException {
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c != '<') {
+                    continue;
+                }
+                String name = readTag();
+                if (name == null) {
+                    break;
+                }
+                switch (name) {
+                    case "h3":
+                        flushPendingFolder();
+                        pendingFolderDate = addDateMillis(attribute(tag, "add_date"));
+                        pendingFolder = readText("/h3");
+                        break;
+                    case "a": {
+                        flushPendingFolder();
+                        String url = attribute(tag, "href");
+                        long added = addDateMillis(attribute(tag, "add_date"));
+                        String title = readText("/a");
+                        if (url != null) {
+                            visitor.onBookmark(title, url, added);
+                        }
+                        break;
+                    }
+                    case "dl":
+                        lists.add(pendingFolder != null);
+                        if (pendingFolder != null) {
+                            visitor.onFolderStart(pendingFolder, pendingFolderDate);
+                            pendingFolder = null;
+                        }
+                        break;
+                    case "/dl":
+                        flushPendingFolder();
+                        if (!lists.isEmpty() && lists.remove(lists.size() - 1)) {
+                            visitor.onFolderEnd();
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            flushPendingFolder();
+            for (int i = lists.size() - 1; i >= 0; i--) {
+                if (lists.get(i)) {
+                    visitor.onFolderEnd(); // unterminated folder
+                }
+            }
+        }
+
+        // A folder heading without a list of its own is an empty folder
+        private void flushPendingFolder() throws IOException {
+            if (pendingFolder != null) {
+                visitor.onFolderStart(pendingFolder, pendingFolderDate);
+                visitor.onFolderEnd();
+                pendingFolder = null;
+            }
+        }
+
+        // Reads up to the closing '>' into tag and returns the lowercase tag name
+        // ("/dl" for end tags), or null at end of input
+        private String readTag() throws IOException {
+            tag.setLength(0);
+            char quote = 0;
+            int c;
+            while ((c = in.read()) != -1) {
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = (char) c;
+                } else if (c == '>') {
+                    break;
+                }
+                if (tag.length() < MAX_TAG) {
+                    tag.append((char) c);
+                }
+                if (tag.length() == 3 && quote == 0 && "!--".contentEquals(tag)) {
+                    skipComment();
+                    return "!--";
+                }
+            }
+            if (c == -1) {
+                return null;
+            }
+            int end = 0;
+            while (end < tag.length() && !Character.isWhitespace(tag.charAt(end))) {
+                end++;
+            }
+            return tag.substring(0, end).toLowerCase(Locale.ROOT);
+        }
+
+        // Comments may contain quotes and '>', so they are skipped up to "-->"
+        private void skipComment() throws IOException {
+            int dashes = 0;
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '>' && dashes >= 2) {
+                    return;
+                }
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+        }
+
+        // Element text up to the given end tag, with inner tags dropped
+        private String readText(String endTag) throws IOException {
+            text.setLength(0);
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '<') {
+                    String name = readTag();
+                    if (name == null || name.equals(endTag)) {
+                        break;
+                    }
+                } else if (text.length() < MAX_TEXT) {
+                    text.append((char) c);
+                }
+            }
+            return decodeEntities(text.toString().trim());
+        }
+    }
+
+    // Value of a name="value" attribute in tag text, entity-decoded, or null
+    static String attribute(CharSequence tag, String name) {
+        int i = 0;
+        int length = tag.length();
+        while (i < length && !Character.isWhitespace(tag.charAt(i))) {
+            i++; // tag name
+        }
+        while (i < length) {
+            while (i < length && (Character.isWhitespace(tag.charAt(i)) || tag.charAt(i) == '/')) {
+                i++;
+            }
+            int nameStart = i;
+            while (i < length && tag.charAt(i) != '=' && !Character.isWhitespace(tag.charAt(i))) {
+                i++;
+            }
+            String attributeName = tag.subSequence(nameStart, i).toString();
+            while (i < length && Character.isWhitespace(tag.charAt(i))) {
+                i++;
+            }
+            String value = null;
+            if (i < length && tag.charAt(i) == '=') {
+                i++;
+                while (i < length && Character.isWhitespace(tag.charAt(i))) {
+                    i++;
+                }
+                int valueStart;
+                int valueEnd;
+                if (i < length && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+                    char quote = tag.charAt(i++);
+                    valueStart = i;
+                    while (i < length && tag.charAt(i) != quote) {
+                        i++;
+                    }
+                    valueEnd = i++;
+                } else {
+                    valueStart = i;
+                    while (i < length && !Character.isWhitespace(tag.charAt(i))) {
+                        i++;
+                    }
+                    valueEnd = i;
+                }
+                value = tag.subSequence(valueStart, Math.min(valueEnd, length)).toString();
+            }
+            if (attributeName.equalsIgnoreCase(name)) {
+                return value != null ? decodeEntities(value) : "";
+            }
+            if (attributeName.isEmpty()) {
+                i++; // stray character
+            }
+        }
+        return null;
+    }
+
+    static String decodeEntities(String value) {
+        int amp = value.indexOf('&');
+        if (amp < 0) {
+            return value;
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        out.append(value, 0, amp);
+        int i = amp;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            int semicolon = c == '&' ? value.indexOf(';', i) : -1;
+            if (semicolon < 0 || semicolon - i > 10) {
+                out.append(c);
+                i++;
+                continue;
+            }
+            String entity = value.substring(i + 1, semicolon);
+            int decoded = decodeEntity(entity);
+            if (decoded <= 0 || !Character.isValidCodePoint(decoded)) {
+                out.append(c);
+                i++;
+            } else {
+                out.appendCodePoint(decoded);
+                i = semicolon + 1;
+            }
+        }
+        return out.toString();
+    }
+
+    private static int decodeEntity(String entity) {
+        switch (entity) {
+            case "amp": return '&';
+            case "lt": return '<';
+            case "gt": return '>';
+            case "quot": return '"';
+            case "apos": return '\'';
+            case "nbsp": return ' ';
+            default: break;
+        }
+        try {
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                return Integer.parseInt(entity.substring(2), 16);
+            }
+            if (entity.startsWith("#")) {
+                return Integer.parseInt(entity.substring(1));
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    // ADD_DATE is in seconds (some exporters write microseconds)
+    private static long addDateMillis(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            return parsed > 100000000000000L ? parsed / 1000 : parsed * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Streams the format out entry by entry; call begin() first and end() last
+    static final class Output {
+        private final Writer out;
+        private int depth = 1;
+
+        Output(Writer out) {
+            this.out = out;
+        }
+
+        void begin() throws IOException {
+            out.write("<!DOCTYPE NETSCAPE-Bookmark-file-1>\n"
+                    + "<!-- This is an automatically generated file.\n"
+                    + "     It will be read and overwritten.\n"
+                    + "     DO NOT EDIT! -->\n"
+                    + "<META HTTP-EQUIV=\"Content-Type\" CONTENT=\"text/html; charset=UTF-8\">\n"
+                    + "<TITLE>Bookmarks</TITLE>\n"
+                    + "<H1>Bookmarks</H1>\n"
+                    + "<DL><p>\n");
+        }
+
+        void startFolder(String title, long addDate) throws IOException {
+            indent();
+            out.write("<DT><H3 ADD_DATE=\"" + addDate / 1000 + "\">");
+            out.write(escape(title));
+            out.write("</H3>\n");
+            indent();
+            out.write("<DL><p>\n");
+            depth++;
+        }
+
+        void endFolder() throws IOException {
+            depth--;
+            indent();
+            out.write("</DL><p>\n");
+        }
+
+        void bookmark(String title, String url, long addDate) throws IOException {
+            indent();
+            out.write("<DT><A HREF=\"");
+            out.write(escape(url));
+            out.write("\" ADD_DATE=\"" + addDate / 1000 + "\">");
+            out.write(escape(title != null ? title : url));
+            out.write("</A>\n");
+        }
+
+        void end() throws IOException {
+            out.write("</DL><p>\n");
+            out.flush();
+        }
+
+        private void indent() throws IOException {
+            for (int i = 0; i < depth; i++) {
+                out.write("    ");
+            }
+        }
+    }
+
+    static String escape(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&': out.append("&amp;"); break;
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '"': out.append("&quot;"); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+}
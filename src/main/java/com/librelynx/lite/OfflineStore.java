@@ -0,0 +1,367 @@
+package com.librelynx.lite;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebView;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Pages saved for offline reading, as MHTML web archives written by WebView.
+//
+// Archives live in files/offline, one file per page named after its row in the
+// offline_pages table, which records the URL, size and when the copy was last
+// opened. The store keeps to a size budget: after every save the least recently
+// used copies are deleted until the total fits again. That and all other file and
+// database work run on a writer thread; results come back on the main thread.
+//
+// Which URLs have a copy is mirrored in memory on the main thread, so deciding
+// whether to serve a copy instead of the network costs a map lookup. Copies are
+// deleted one by one from the history and bookmark menus, and all at once when
+// history is cleared.
+final class OfflineStore {
+
+    static final class Snapshot {
+        final long id;
+        final String url;
+        final String title;
+        final long size;
+        final long savedAt;
+        final File file;
+
+        Snapshot(long id, String url, String title, long size, long savedAt, File file) {
+            this.id = id;
+            this.url = url;
+            this.title = title;
+            this.size = size;
+            this.savedAt = savedAt;
+            this.file = file;
+        }
+    }
+
+    private static final String DIRECTORY = "offline";
+    private static final String EXTENSION = ".mht";
+    private static final long BUDGET_BYTES = 64L * 1024 * 1024;
+    // Below this the saved copy is used rather than waiting for the network (about 2G)
+    private static final int SLOW_LINK_KBPS = 250;
+
+    private static OfflineStore instance;
+
+    private final File directory;
+    private final String fileUrlPrefix;
+    private final BrowserDatabase database;
+    private final Handler writer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Snapshot> byUrl = new HashMap<>(); // main thread only
+    private final Map<Long, Snapshot> byId = new HashMap<>(); // main thread only
+
+    static synchronized OfflineStore get(Context context) {
+        if (instance == null) {
+            instance = new OfflineStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private OfflineStore(Context context) {
+        this.directory = new File(context.getFilesDir(), DIRECTORY);
+        this.fileUrlPrefix = "file://" + directory.getAbsolutePath() + "/";
+        this.database = BrowserDatabase.get(context);
+        HandlerThread thread = new HandlerThread("offline-writer", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        writer = new Handler(thread.getLooper());
+        writer.post(this::loadIndex);
+    }
+
+    // The saved copy of the URL, or null; main thread
+    Snapshot find(String url) {
+        return url != null ? byUrl.get(url) : null;
+    }
+
+    String fileUrl(Snapshot snapshot) {
+        return fileUrlPrefix + snapshot.file.getName();
+    }
+
+    // True if the URL points at a saved copy. Safe from any thread.
+    boolean isSnapshotUrl(String url) {
+        return url != null && url.startsWith(fileUrlPrefix);
+    }
+
+    // The page a saved copy was taken from, or the URL itself if it is not a copy
+    String originalUrl(String url) {
+        if (!isSnapshotUrl(url)) {
+            return url;
+        }
+        try {
+            String name = url.substring(fileUrlPrefix.length());
+            Snapshot snapshot = byId.get(Long.parseLong(name.substring(0, name.length() - EXTENSION.length())));
+            return snapshot != null ? snapshot.url : url;
+        } catch (RuntimeException e) {
+            return url;
+        }
+    }
+
+    // Writes the page shown in the WebView as an archive for url, replacing any older
+    // copy. The snapshot (null on error) is delivered on the main thread.
+    void save(WebView webView, final String url, final String title, final ResultCallback<Snapshot> callback) {
+        final File temp = new File(directory, "pending-" + SystemClock.elapsedRealtimeNanos() + EXTENSION);
+        // WebView writes the file itself and calls back on the main thread
+        webView.saveWebArchive(temp.getPath(), false, saved -> {
+            if (saved == null) {
+                Log.e("OfflineStore", "WebView could not archive " + url);
+                writer.post(temp::delete);
+                if (callback != null) {
+                    callback.onResult(null);
+                }
+                return;
+            }
+            writer.post(() -> store(temp, url, title, callback));
+        });
+    }
+
+    // Records that the copy was opened, which keeps it from eviction longest
+    void markUsed(final Snapshot snapshot) {
+        writer.post(() -> {
+            try {
+                ContentValues values = new ContentValues();
+                values.put("last_used", System.currentTimeMillis());
+                database.getWritableDatabase().update("offline_pages", values, "_id = ?",
+                        new String[] {Long.toString(snapshot.id)});
+            } catch (Exception e) {
+                Log.e("OfflineStore", "Error in markUsed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    void remove(String url) {
+        final Snapshot snapshot = byUrl.remove(url);
+        if (snapshot == null) {
+            return;
+        }
+        byId.remove(snapshot.id);
+        writer.post(() -> {
+            try {
+                database.getWritableDatabase().delete("offline_pages", "_id = ?",
+                        new String[] {Long.toString(snapshot.id)});
+                snapshot.file.delete();
+            } catch (Exception e) {
+                Log.e("OfflineStore", "Error in remove: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // Deletes every saved copy, e.g. with the browsing history
+    void clear() {
+        byUrl.clear();
+        byId.clear();
+        writer.post(() -> {
+            try {
+                database.getWritableDatabase().delete("offline_pages", null, null);
+                File[] files = directory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+            } catch (Exception e) {
+                Log.e("OfflineStore", "Error in clear: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // True when a saved copy should be shown instead of loading the page: there is
+    // no validated connection, or it is too slow to be worth waiting for
+    @SuppressWarnings("deprecation")
+    static boolean preferOffline(Context context) {
+        ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity == null) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Network network = connectivity.getActiveNetwork();
+            NetworkCapabilities capabilities = network != null ? connectivity.getNetworkCapabilities(network) : null;
+            if (capabilities == null || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) {
+                return true;
+            }
+            int kbps = capabilities.getLinkDownstreamBandwidthKbps();
+            return kbps > 0 && kbps < SLOW_LINK_KBPS;
+        }
+        NetworkInfo info = connectivity.getActiveNetworkInfo();
+        return info == null || !info.isConnected();
+    }
+
+    // Writer thread: files the finished archive under its row and evicts to budget
+    private void store(File temp, String url, String title, ResultCallback<Snapshot> callback) {
+        Snapshot snapshot = null;
+        try {
+            long size = temp.length();
+            if (size <= 0) {
+                throw new IllegalStateException("Empty archive");
+            }
+            SQLiteDatabase db = database.getWritableDatabase();
+            long now = System.currentTimeMillis();
+            ContentValues values = new ContentValues();
+            values.put("url", url);
+            values.put("title", title);
+            values.put("size", size);
+            values.put("saved_at", now);
+            values.put("last_used", now);
+            long id = findId(db, url);
+            if (id < 0) {
+                id = db.insert("offline_pages", null, values);
+            } else {
+                db.update("offline_pages", values, "_id = ?", new String[] {Long.toString(id)});
+            }
+            if (id < 0) {
+                throw new IllegalStateException("Insert failed");
+            }
+            File target = file(id);
+            if (!temp.renameTo(target)) {
+                db.delete("offline_pages", "_id = ?", new String[] {Long.toString(id)});
+                throw new IllegalStateException("Cannot move archive to " + target);
+            }
+            snapshot = new Snapshot(id, url, title, size, now, target);
+            Log.d("OfflineStore", "Saved " + url + " (" + size / 1024 + " KB)");
+            evict(db, id);
+        } catch (Exception e) {
+            Log.e("OfflineStore", "Error saving offline copy: " + e.getMessage(), e);
+            temp.delete();
+        }
+        final Snapshot result = snapshot;
+        mainHandler.post(() -> {
+            if (result != null) {
+                put(result);
+            }
+            if (callback != null) {
+                callback.onResult(result);
+            }
+        });
+    }
+
+    // Writer thread: deletes least recently used copies, except keepId, until the
+    // total fits the budget
+    private void evict(SQLiteDatabase db, long keepId) {
+        long used = 0;
+        Cursor total = db.rawQuery("SELECT COALESCE(SUM(size), 0) FROM offline_pages", null);
+        try {
+            if (total.moveToFirst()) {
+                used = total.getLong(0);
+            }
+        } finally {
+            total.close();
+        }
+        if (used <= BUDGET_BYTES) {
+            return;
+        }
+        final List<String> evicted = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT _id, url, size FROM offline_pages WHERE _id != ? ORDER BY last_used",
+                new String[] {Long.toString(keepId)});
+        try {
+            while (used > BUDGET_BYTES && cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                db.delete("offline_pages", "_id = ?", new String[] {Long.toString(id)});
+                file(id).delete();
+                evicted.add(cursor.getString(1));
+                used -= cursor.getLong(2);
+            }
+        } finally {
+            cursor.close();
+        }
+        Log.d("OfflineStore", "Evicted " + evicted.size() + " offline copies, " + used / 1024 + " KB in use");
+        mainHandler.post(() -> {
+            for (String url : evicted) {
+                Snapshot snapshot = byUrl.remove(url);
+                if (snapshot != null) {
+                    byId.remove(snapshot.id);
+                }
+            }
+        });
+    }
+
+    // Writer thread: evicts to budget, reads the table, drops rows whose file is gone
+    // and files no row refers to (including archives interrupted mid-save), then
+    // publishes the index
+    private void loadIndex() {
+        final List<Snapshot> snapshots = new ArrayList<>();
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IllegalStateException("Cannot create " + directory);
+            }
+            SQLiteDatabase db = database.getWritableDatabase();
+            evict(db, -1);
+            Set<String> names = new HashSet<>();
+            Cursor cursor = db.rawQuery("SELECT _id, url, title, size, saved_at FROM offline_pages", null);
+            try {
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    File file = file(id);
+                    if (!file.isFile()) {
+                        db.delete("offline_pages", "_id = ?", new String[] {Long.toString(id)});
+                        continue;
+                    }
+                    names.add(file.getName());
+                    snapshots.add(new Snapshot(id, cursor.getString(1), cursor.getString(2), cursor.getLong(3),
+                            cursor.getLong(4), file));
+                }
+            } finally {
+                cursor.close();
+            }
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!names.contains(file.getName())) {
+                        file.delete();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e("OfflineStore", "Error loading offline index: " + e.getMessage(), e);
+        }
+        mainHandler.post(() -> {
+            for (Snapshot snapshot : snapshots) {
+                // A save that finished first holds the newer copy
+                if (!byUrl.containsKey(snapshot.url)) {
+                    put(snapshot);
+                }
+            }
+            Log.d("OfflineStore", byUrl.size() + " offline copies available");
+        });
+    }
+
+    private void put(Snapshot snapshot) {
+        Snapshot previous = byUrl.put(snapshot.url, snapshot);
+        if (previous != null) {
+            byId.remove(previous.id);
+        }
+        byId.put(snapshot.id, snapshot);
+    }
+
+    private static long findId(SQLiteDatabase db, String url) {
+        Cursor cursor = db.rawQuery("SELECT _id FROM offline_pages WHERE url = ?", new String[] {url});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private File file(long id) {
+        return new File(directory, id + EXTENSION);
+    }
+}
@@ -0,0 +1,193 @@
+package com.librelynx.lite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Sorted string keys mapped to values, searchable by key prefix.
+//
+// The bulk of the keys live in a sorted array found by binary search; keys added
+// later go into a small TreeMap. When the TreeMap grows past MERGE_THRESHOLD both
+// are merged back into one array, so adds are O(log n) amortized and a prefix scan
+// is a binary search plus a walk over the matching keys. Keys may repeat, but a
+// key is held once per value.
+//
+// Values have a score. The array is cut into blocks that remember their highest
+// score, so a scan for the best matches skips every block that cannot beat what
+// it has already found, and short prefixes matching most of the index stay cheap.
+// Scores may only grow. The block bounds are computed when the array is built, so
+// when a value's score grows it must be added again under its keys: the delta is
+// always scanned in full, and the next merge folds the copies together and
+// refreshes the bounds.
+//
+// Not thread-safe: owners confine it to one thread.
+final class PrefixIndex<T> {
+
+    interface Scorer<T> {
+        double score(T value);
+    }
+
+    interface Visitor<T> {
+        // Return false to stop the scan
+        boolean visit(String key, T value);
+
+        // Values scoring at or below this can no longer change the result
+        double threshold();
+    }
+
+    private static final int MERGE_THRESHOLD = 4096;
+    private static final int BLOCK_SIZE = 64;
+
+    private final Scorer<T> scorer;
+    private String[] keys = new String[0];
+    private Object[] values = new Object[0];
+    private double[] blockMax = new double[0];
+    private final TreeMap<String, List<T>> delta = new TreeMap<>();
+    private int deltaSize;
+
+    PrefixIndex(Scorer<T> scorer) {
+        this.scorer = scorer;
+    }
+
+    int size() {
+        return keys.length + deltaSize;
+    }
+
+    // Replaces the contents; cheaper than add() for large batches
+    void load(List<String> newKeys, List<T> newValues) {
+        int n = newKeys.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> newKeys.get(a).compareTo(newKeys.get(b)));
+        String[] sortedKeys = new String[n];
+        Object[] sortedValues = new Object[n];
+        for (int i = 0; i < n; i++) {
+            sortedKeys[i] = newKeys.get(order[i]);
+            sortedValues[i] = newValues.get(order[i]);
+        }
+        keys = sortedKeys;
+        values = sortedValues;
+        delta.clear();
+        deltaSize = 0;
+        computeBounds();
+    }
+
+    // Adds the key for the value, or re-adds it after the value's score grew
+    void add(String key, T value) {
+        List<T> bucket = delta.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<>(1);
+            delta.put(key, bucket);
+        } else if (containsSame(bucket, value)) {
+            return;
+        }
+        bucket.add(value);
+        if (++deltaSize > MERGE_THRESHOLD) {
+            merge();
+        }
+    }
+
+    // Visits the values under keys starting with prefix, skipping blocks of the
+    // array whose best score is at or below the visitor's threshold. The delta is
+    // visited after the array, in full. A value reached through several keys is
+    // visited once per key.
+    @SuppressWarnings("unchecked")
+    void scan(String prefix, Visitor<T> visitor) {
+        int i = lowerBound(prefix);
+        while (i < keys.length && keys[i].startsWith(prefix)) {
+            int block = i / BLOCK_SIZE;
+            if (blockMax[block] <= visitor.threshold()) {
+                i = (block + 1) * BLOCK_SIZE;
+                continue;
+            }
+            if (!visitor.visit(keys[i], (T) values[i])) {
+                return;
+            }
+            i++;
+        }
+        if (deltaSize == 0) {
+            return;
+        }
+        for (Map.Entry<String, List<T>> entry : delta.tailMap(prefix, true).entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                return;
+            }
+            for (T value : entry.getValue()) {
+                if (!visitor.visit(key, value)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Linear merge of the sorted array with the sorted delta. Array entries the
+    // delta holds again (re-added after a score change) are dropped.
+    private void merge() {
+        int total = keys.length + deltaSize;
+        String[] mergedKeys = new String[total];
+        Object[] mergedValues = new Object[total];
+        int i = 0;
+        int out = 0;
+        for (Map.Entry<String, List<T>> entry : delta.entrySet()) {
+            String key = entry.getKey();
+            List<T> bucket = entry.getValue();
+            while (i < keys.length && keys[i].compareTo(key) <= 0) {
+                if (!keys[i].equals(key) || !containsSame(bucket, values[i])) {
+                    mergedKeys[out] = keys[i];
+                    mergedValues[out++] = values[i];
+                }
+                i++;
+            }
+            for (T value : bucket) {
+                mergedKeys[out] = key;
+                mergedValues[out++] = value;
+            }
+        }
+        while (i < keys.length) {
+            mergedKeys[out] = keys[i];
+            mergedValues[out++] = values[i++];
+        }
+        keys = out == total ? mergedKeys : Arrays.copyOf(mergedKeys, out);
+        values = out == total ? mergedValues : Arrays.copyOf(mergedValues, out);
+        delta.clear();
+        deltaSize = 0;
+        computeBounds();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void computeBounds() {
+        blockMax = new double[(keys.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        Arrays.fill(blockMax, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < keys.length; i++) {
+            blockMax[i / BLOCK_SIZE] = Math.max(blockMax[i / BLOCK_SIZE], scorer.score((T) values[i]));
+        }
+    }
+
+    private static boolean containsSame(List<?> bucket, Object value) {
+        for (Object existing : bucket) {
+            if (existing == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
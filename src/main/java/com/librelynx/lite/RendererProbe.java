@@ -0,0 +1,121 @@
+package com.librelynx.lite;
+
+import android.util.Log;
+import android.webkit.WebView;
+import androidx.webkit.WebViewCompat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Counts the work a page's renderer does while the page is hidden, which the app
+// process cannot see: the renderer is a separate process with its own CPU time.
+//
+// A document-start script wraps requestAnimationFrame, setTimeout and setInterval
+// in the top frame, and counts the callbacks that fire while document.hidden is
+// true. The counts live in the page and are read back with evaluateJavascript, so
+// there is no bridge from the page into the app. They start over with every new
+// document, and are lost when a tab hibernates.
+//
+// Wrapping the timer functions is visible to pages, so the probe is only
+// installed in debuggable builds. Main thread only.
+final class RendererProbe {
+
+    private static final String SCRIPT = "(function(){" +
+        "try {" +
+            "if (window !== window.top || window.__librelynxProbe) return;" +
+            "var frames = 0, timers = 0;" +
+            "function wrap(name, count) {" +
+                "var original = window[name];" +
+                "window[name] = function(callback) {" +
+                    "if (typeof callback !== 'function') return original.apply(window, arguments);" +
+                    "var args = Array.prototype.slice.call(arguments);" +
+                    "args[0] = function() {" +
+                        "if (document.hidden) count();" +
+                        "return callback.apply(this, arguments);" +
+                    "};" +
+                    "return original.apply(window, args);" +
+                "};" +
+            "}" +
+            "wrap('requestAnimationFrame', function() { frames++; });" +
+            "wrap('setTimeout', function() { timers++; });" +
+            "wrap('setInterval', function() { timers++; });" +
+            "Object.defineProperty(window, '__librelynxProbe', {value: function(reset) {" +
+                "var counts = frames + ',' + timers;" +
+                "if (reset) { frames = 0; timers = 0; }" +
+                "return counts;" +
+            "}});" +
+        "} catch(e) {}" +
+        "})();";
+
+    // Reads not answered yet. A destroyed WebView never answers, so released()
+    // answers them instead.
+    private static final Map<WebView, List<ResultCallback<long[]>>> pending = new HashMap<>();
+
+    private RendererProbe() {
+    }
+
+    // Registers the probe for every page the WebView loads
+    static void install(WebView webView) {
+        try {
+            WebViewCompat.addDocumentStartJavaScript(webView, SCRIPT, Collections.singleton("*"));
+        } catch (Exception e) {
+            Log.e("RendererProbe", "Error in install: " + e.getMessage(), e);
+        }
+    }
+
+    // Delivers {frames, timers} fired while hidden since the last reset, or null if
+    // the page has no probe
+    static void read(WebView webView, boolean reset, ResultCallback<long[]> callback) {
+        List<ResultCallback<long[]>> callbacks = pending.get(webView);
+        if (callbacks == null) {
+            callbacks = new ArrayList<>();
+            pending.put(webView, callbacks);
+        }
+        callbacks.add(callback);
+        webView.evaluateJavascript("window.__librelynxProbe ? window.__librelynxProbe(" + reset + ") : ''", value -> {
+            if (answered(webView, callback)) {
+                callback.onResult(parse(value));
+            }
+        });
+    }
+
+    // The WebView is about to be destroyed: its unanswered reads get null
+    static void released(WebView webView) {
+        List<ResultCallback<long[]>> callbacks = pending.remove(webView);
+        if (callbacks != null) {
+            for (ResultCallback<long[]> callback : callbacks) {
+                callback.onResult(null);
+            }
+        }
+    }
+
+    private static boolean answered(WebView webView, ResultCallback<long[]> callback) {
+        List<ResultCallback<long[]>> callbacks = pending.get(webView);
+        if (callbacks == null || !callbacks.remove(callback)) {
+            return false;
+        }
+        if (callbacks.isEmpty()) {
+            pending.remove(webView);
+        }
+        return true;
+    }
+
+    // evaluateJavascript returns the string JSON-quoted, e.g. "\"12,3\""
+    private static long[] parse(String value) {
+        if (value == null || value.length() < 2) {
+            return null;
+        }
+        String counts = value.substring(1, value.length() - 1);
+        int comma = counts.indexOf(',');
+        if (comma < 0) {
+            return null;
+        }
+        try {
+            return new long[] {Long.parseLong(counts.substring(0, comma)), Long.parseLong(counts.substring(comma + 1))};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.librelynx.lite;
+
+// Best-effort resource type of an intercepted request. WebResourceRequest does not
+// expose the initiator type, so this is inferred from the frame and the file
+// extension without allocating. Request headers are not consulted: reading them
+// copies the whole header map for every blocked request.
+//
+// estimatedBytes is a rough median transfer size per type, used to estimate the
+// traffic saved by blocking.
+enum ResourceType {
+    DOCUMENT(60_000),
+    SUBDOCUMENT(40_000),
+    SCRIPT(30_000),
+    STYLESHEET(15_000),
+    IMAGE(12_000),
+    FONT(35_000),
+    MEDIA(250_000),
+    XHR(3_000),
+    OTHER(5_000);
+
+    final int estimatedBytes;
+
+    ResourceType(int estimatedBytes) {
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    static ResourceType classify(String url, boolean mainFrame) {
+        if (mainFrame) {
+            return DOCUMENT;
+        }
+        ResourceType byExtension = fromExtension(url);
+        return byExtension != null ? byExtension : OTHER;
+    }
+
+    private static ResourceType fromExtension(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) end = query;
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) end = fragment;
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot < 0 || url.lastIndexOf('/', end - 1) > dot) {
+            return null;
+        }
+        int start = dot + 1;
+        int length = end - start;
+        if (is(url, start, length, "js") || is(url, start, length, "mjs")) return SCRIPT;
+        if (is(url, start, length, "css")) return STYLESHEET;
+        if (is(url, start, length, "png") || is(url, start, length, "jpg") || is(url, start, length, "jpeg")
+                || is(url, start, length, "gif") || is(url, start, length, "webp") || is(url, start, length, "svg")
+                || is(url, start, length, "ico")) return IMAGE;
+        if (is(url, start, length, "woff") || is(url, start, length, "woff2") || is(url, start, length, "ttf")
+                || is(url, start, length, "otf")) return FONT;
+        if (is(url, start, length, "mp4") || is(url, start, length, "webm") || is(url, start, length, "m3u8")
+                || is(url, start, length, "mp3")) return MEDIA;
+        if (is(url, start, length, "html") || is(url, start, length, "htm")) return SUBDOCUMENT;
+        return null;
+    }
+
+    private static boolean is(String url, int start, int length, String extension) {
+        return length == extension.length() && url.regionMatches(true, start, extension, 0, length);
+    }
+}
@@ -0,0 +1,7 @@
+package com.librelynx.lite;
+
+// Receives the result of an asynchronous store operation. Each method that takes
+// one documents which thread it is called on.
+interface ResultCallback<T> {
+    void onResult(T result);
+}
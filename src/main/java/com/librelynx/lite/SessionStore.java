@@ -0,0 +1,309 @@
+package com.librelynx.lite;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Process;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// The open tabs, saved so they survive the process being killed.
+//
+// The session is an index file with every tab's id, URL and title plus the
+// active index, and one file per tab holding its marshalled back/forward state.
+// Changes are saved incrementally: a navigation marks only its tab dirty, and a
+// moment later one save rewrites the small index and the state of the dirty tabs
+// alone, on a writer thread. Both are written to a temp file and renamed, state
+// files before the index, so a crash mid-save leaves the previous session intact.
+//
+// Restoring reads only the index. Every tab comes back as a placeholder that
+// shows its saved title and URL; a tab's state file is read when the tab is first
+// woken, so a long session starts about as fast as a single tab.
+final class SessionStore {
+
+    static final class SavedTab {
+        final long id;
+        final String url;
+        final String title;
+
+        SavedTab(long id, String url, String title) {
+            this.id = id;
+            this.url = url;
+            this.title = title;
+        }
+    }
+
+    static final class Session {
+        final List<SavedTab> tabs;
+        final int activeIndex;
+
+        Session(List<SavedTab> tabs, int activeIndex) {
+            this.tabs = tabs;
+            this.activeIndex = activeIndex;
+        }
+    }
+
+    private static final String DIRECTORY = "session";
+    private static final String INDEX_FILE = "tabs.index";
+    private static final int MAGIC = 0x4c4c5353; // "LLSS"
+    private static final int VERSION = 1;
+    private static final long SAVE_DELAY_MS = 1000;
+    // writeUTF takes at most 64 KB; longer (data:) URLs are left to the saved state
+    private static final int MAX_STRING = 16 * 1024;
+
+    private static Handler writer;
+
+    private final File directory;
+    private final TabManager tabManager;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Set<Long> dirty = new HashSet<>();
+    private final List<Long> closed = new ArrayList<>();
+    // The parcel format is private to the platform, so saved state is only trusted
+    // on the release that wrote it; after an OS update tabs reload from their URL
+    private boolean stateUsable = true;
+    private boolean shutDown;
+
+    private final Runnable saveTask = this::saveNow;
+
+    SessionStore(Context context, TabManager tabManager) {
+        this.directory = new File(context.getFilesDir(), DIRECTORY);
+        this.tabManager = tabManager;
+    }
+
+    private static synchronized Handler writer() {
+        if (writer == null) {
+            HandlerThread thread = new HandlerThread("session-writer", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            writer = new Handler(thread.getLooper());
+        }
+        return writer;
+    }
+
+    // Reads the saved index on the calling thread; null if there is no usable session
+    Session load() {
+        File index = new File(directory, INDEX_FILE);
+        if (!index.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            stateUsable = in.readInt() == Build.VERSION.SDK_INT;
+            int activeIndex = in.readInt();
+            int count = in.readInt();
+            List<SavedTab> tabs = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                long id = in.readLong();
+                String url = in.readUTF();
+                String title = in.readUTF();
+                tabs.add(new SavedTab(id, url.isEmpty() ? null : url, title.isEmpty() ? null : title));
+            }
+            if (tabs.isEmpty()) {
+                return null;
+            }
+            return new Session(tabs, Math.max(0, Math.min(activeIndex, tabs.size() - 1)));
+        } catch (IOException e) {
+            Log.e("SessionStore", "Error in load: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // Saved back/forward state of a restored tab, or null; read when the tab wakes
+    Bundle readState(long tabId) {
+        if (!stateUsable) {
+            return null;
+        }
+        File file = stateFile(tabId);
+        int length = (int) file.length();
+        if (length <= 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(bytes);
+        } catch (IOException e) {
+            Log.e("SessionStore", "Error in readState: " + e.getMessage(), e);
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(BrowserTab.class.getClassLoader());
+        } catch (RuntimeException e) {
+            Log.e("SessionStore", "Discarding unreadable state of tab " + tabId, e);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    // The tab navigated: its state and the index are saved shortly
+    void tabChanged(BrowserTab tab) {
+        dirty.add(tab.id);
+        scheduleSave();
+    }
+
+    // Tabs were added, reordered or switched, or a title changed: the index is saved shortly
+    void scheduleSave() {
+        if (shutDown) {
+            return;
+        }
+        mainHandler.removeCallbacks(saveTask);
+        mainHandler.postDelayed(saveTask, SAVE_DELAY_MS);
+    }
+
+    // The tab's state file is deleted with the next save
+    void tabClosed(BrowserTab tab) {
+        dirty.remove(tab.id);
+        closed.add(tab.id);
+        scheduleSave();
+    }
+
+    // Captures the index and dirty tab states on the main thread, where WebView
+    // state must be read, and hands the bytes to the writer. Called directly when
+    // the app goes to the background.
+    void saveNow() {
+        mainHandler.removeCallbacks(saveTask);
+        if (shutDown) {
+            return;
+        }
+        final List<Long> stateIds = new ArrayList<>();
+        final List<byte[]> states = new ArrayList<>();
+        for (BrowserTab tab : tabManager.tabs()) {
+            if (dirty.contains(tab.id)) {
+                Bundle state = tab.saveState();
+                if (state != null) {
+                    stateIds.add(tab.id);
+                    states.add(marshall(state));
+                }
+            }
+        }
+        dirty.clear();
+        final byte[] index;
+        try {
+            index = writeIndex(tabManager.tabs(), tabManager.activeIndex());
+        } catch (IOException e) {
+            Log.e("SessionStore", "Error in saveNow: " + e.getMessage(), e);
+            return;
+        }
+        final List<Long> deleted = new ArrayList<>(closed);
+        closed.clear();
+        writer().post(() -> {
+            try {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Cannot create " + directory);
+                }
+                for (int i = 0; i < stateIds.size(); i++) {
+                    writeAtomically(stateFile(stateIds.get(i)), states.get(i));
+                }
+                writeAtomically(new File(directory, INDEX_FILE), index);
+                for (long id : deleted) {
+                    stateFile(id).delete();
+                }
+                Log.d("SessionStore", "Saved session, " + stateIds.size() + " tab states written");
+            } catch (IOException e) {
+                Log.e("SessionStore", "Error writing session: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // Saves one last time before the tabs are torn down, which must not be saved
+    void shutDown() {
+        saveNow();
+        shutDown = true;
+    }
+
+    // Removes state files of tabs that are no longer in the session, e.g. left
+    // behind by a crash between closing a tab and the next save
+    void deleteOrphans(final Set<Long> openTabIds) {
+        writer().post(() -> {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith("tab-") && name.endsWith(".state")) {
+                    try {
+                        long id = Long.parseLong(name.substring(4, name.length() - 6));
+                        if (!openTabIds.contains(id)) {
+                            file.delete();
+                        }
+                    } catch (NumberFormatException e) {
+                        file.delete();
+                    }
+                } else if (name.endsWith(".tmp")) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    private File stateFile(long tabId) {
+        return new File(directory, "tab-" + tabId + ".state");
+    }
+
+    private static byte[] writeIndex(List<BrowserTab> tabs, int activeIndex) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + tabs.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(Build.VERSION.SDK_INT);
+        out.writeInt(activeIndex);
+        out.writeInt(tabs.size());
+        for (BrowserTab tab : tabs) {
+            out.writeLong(tab.id);
+            out.writeUTF(clamp(tab.url()));
+            out.writeUTF(clamp(tab.title()));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String clamp(String value) {
+        return value == null || value.length() > MAX_STRING ? "" : value;
+    }
+
+    private static byte[] marshall(Bundle state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(state);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static void writeAtomically(File target, byte[] data) throws IOException {
+        File temp = new File(target.getPath() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + target);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.librelynx.lite;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.JsonWriter;
+import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Cold start timing. Each startup stage runs inside an android.os.Trace section
+// ("startup:<stage>"), so it shows up in system traces, and is timed from the
+// start of onCreate along with the first frame and the first visible page.
+//
+// Once startup has settled (the idle stage is done and the initial page, if
+// any, is visible) the report is logged and written as JSON to
+// startup-timing.json in the app's external files directory, where it can be
+// pulled with adb without root. Main thread only.
+final class StartupTrace {
+
+    private static final String REPORT_FILE = "startup-timing.json";
+
+    private final Context context;
+    private final long origin = SystemClock.elapsedRealtimeNanos();
+    // Time from process start to onCreate, -1 where the platform does not say
+    private final long processStartMs;
+    private final List<String> stages = new ArrayList<>();
+    private final List<long[]> stageTimes = new ArrayList<>(); // start and end, ns after origin
+    private final List<String> navigations = new ArrayList<>();
+    private String stage; // open stage, null between stages
+    private long stageStart;
+    private long firstFrame = -1;
+    private long firstPageVisible = -1;
+    private boolean idleDone;
+    private boolean finished;
+
+    StartupTrace(Context context) {
+        this.context = context.getApplicationContext();
+        processStartMs = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime() : -1;
+    }
+
+    // Stages do not nest; each begin() is closed by end(), from a finally block so
+    // a failing stage still closes its trace section
+    void begin(String stage) {
+        if (this.stage != null) {
+            end();
+        }
+        Trace.beginSection("startup:" + stage);
+        this.stage = stage;
+        stageStart = now();
+    }
+
+    void end() {
+        if (stage == null) {
+            return;
+        }
+        stages.add(stage);
+        stageTimes.add(new long[] {stageStart, now()});
+        stage = null;
+        Trace.endSection();
+    }
+
+    void onFirstFrame() {
+        if (firstFrame < 0) {
+            firstFrame = now();
+        }
+    }
+
+    // Every navigation startup issues, so the report shows there was only one
+    void onNavigation(String url) {
+        if (!finished) {
+            navigations.add(url);
+        }
+    }
+
+    void onPageVisible() {
+        if (firstPageVisible < 0) {
+            firstPageVisible = now();
+            maybeFinish();
+        }
+    }
+
+    void onIdleStagesDone() {
+        idleDone = true;
+        maybeFinish();
+    }
+
+    private void maybeFinish() {
+        // Without a navigation (first launch waits for a search engine choice)
+        // there is no page to wait for
+        if (finished || !idleDone || (firstPageVisible < 0 && !navigations.isEmpty())) {
+            return;
+        }
+        finished = true;
+        final String report;
+        try {
+            report = toJson();
+        } catch (IOException e) {
+            Log.e("StartupTrace", "Error building report: " + e.getMessage(), e);
+            return;
+        }
+        Log.d("StartupTrace", report);
+        new Thread(() -> write(report), "startup-report").start();
+    }
+
+    private String toJson() throws IOException {
+        StringWriter out = new StringWriter();
+        JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+        json.name("process_start_to_create_ms").value(processStartMs);
+        json.name("stages").beginArray();
+        for (int i = 0; i < stageTimes.size(); i++) {
+            long[] times = stageTimes.get(i);
+            json.beginObject();
+            json.name("name").value(stages.get(i));
+            json.name("start_ms").value(millis(times[0]));
+            json.name("duration_ms").value(millis(times[1] - times[0]));
+            json.endObject();
+        }
+        json.endArray();
+        json.name("first_frame_ms").value(firstFrame < 0 ? -1 : millis(firstFrame));
+        json.name("first_page_visible_ms").value(firstPageVisible < 0 ? -1 : millis(firstPageVisible));
+        json.name("initial_navigations").beginArray();
+        for (String url : navigations) {
+            json.value(url);
+        }
+        json.endArray();
+        json.endObject();
+        json.close();
+        return out.toString();
+    }
+
+    private void write(String report) {
+        File directory = context.getExternalFilesDir(null);
+        if (directory == null) {
+            directory = context.getFilesDir();
+        }
+        try (OutputStreamWriter out = new OutputStreamWriter(
+                new FileOutputStream(new File(directory, REPORT_FILE)), StandardCharsets.UTF_8)) {
+            out.write(report);
+        } catch (IOException e) {
+            Log.e("StartupTrace", "Error writing report: " + e.getMessage(), e);
+        }
+    }
+
+    private long now() {
+        return SystemClock.elapsedRealtimeNanos() - origin;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+}
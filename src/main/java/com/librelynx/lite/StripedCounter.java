@@ -0,0 +1,38 @@
+package com.librelynx.lite;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Low-contention counter for hot paths that run on several WebView IO threads.
+// Each thread bumps its own padded cell; readers sum the cells. LongAdder would do
+// the same but needs API 24.
+final class StripedCounter {
+
+    private static final int STRIPES = 8;
+    private static final int PADDING = 8; // one 64-byte cache line per stripe
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.getAndAdd(stripe * PADDING, delta);
+    }
+
+    long sum() {
+        long total = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            total += cells.get(i * PADDING);
+        }
+        return total;
+    }
+
+    // Not atomic with concurrent add(); increments racing a reset may survive it
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.librelynx.lite;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// The pages the address bar can suggest, ranked by score.
+//
+// Every candidate is indexed under its host, its URL without scheme and "www.",
+// and the words of its title, and separately under its host alone for inline
+// completion. Scans skip the parts of the index that cannot beat the best matches
+// found so far (see PrefixIndex), so a one-letter query ranks every entry it
+// matches without walking them all. Plain Java, so the benchmarks run the same
+// code as the app.
+//
+// Not thread-safe: Autocomplete confines it to its worker thread.
+final class SuggestionIndex {
+
+    static final class Candidate {
+        final String url;
+        final String hostKey;
+        String title;
+        String searchText; // lowercase url and title for multi-word queries, built on demand
+        double score;
+        boolean removed;
+        int seenBy; // last query that collected this candidate
+
+        Candidate(String url, String hostKey, String title, double score) {
+            this.url = url;
+            this.hostKey = hostKey;
+            this.title = title;
+            this.score = score;
+        }
+    }
+
+    static final class Result {
+        final List<Candidate> matches; // best first
+        final String inlineCompletion; // host to complete the typed text to, or null
+
+        Result(List<Candidate> matches, String inlineCompletion) {
+            this.matches = matches;
+            this.inlineCompletion = inlineCompletion;
+        }
+    }
+
+    interface Cancellation {
+        boolean isCancelled();
+    }
+
+    // Collects a whole index before it is built in one go, much cheaper than add()
+    final class Loader {
+        private final List<String> keys = new ArrayList<>();
+        private final List<Candidate> values = new ArrayList<>();
+
+        // Adds a page, or raises the score of one added already and indexes it under
+        // this title's words too
+        void add(String url, String title, double score) {
+            Candidate existing = byUrl.get(url);
+            if (existing != null) {
+                existing.score = Frecency.logAddExp(existing.score, score);
+                collectTitleKeys(existing, title, keys, values);
+                return;
+            }
+            Candidate candidate = newCandidate(url, title, score);
+            if (candidate != null) {
+                collectKeys(candidate, candidate.title, keys, values);
+            }
+        }
+
+        void finish() {
+            index.load(keys, values);
+            List<String> hostKeys = new ArrayList<>(byUrl.size());
+            List<Candidate> hostValues = new ArrayList<>(byUrl.size());
+            for (Candidate candidate : byUrl.values()) {
+                hostKeys.add(candidate.hostKey);
+                hostValues.add(candidate);
+            }
+            hosts.load(hostKeys, hostValues);
+        }
+    }
+
+    static final int MAX_RESULTS = 8;
+    private static final int MAX_TITLE_TOKENS = 8;
+    // Queries check for cancellation this often, in keys visited
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private final PrefixIndex<Candidate> index = new PrefixIndex<>(candidate -> candidate.score);
+    private final PrefixIndex<Candidate> hosts = new PrefixIndex<>(candidate -> candidate.score);
+    private final Map<String, Candidate> byUrl = new HashMap<>();
+    private int queries;
+
+    int size() {
+        return byUrl.size();
+    }
+
+    int keyCount() {
+        return index.size();
+    }
+
+    boolean contains(String url) {
+        return byUrl.containsKey(url);
+    }
+
+    // Clears the index; the contents are replaced when the loader finishes
+    Loader reload() {
+        byUrl.clear();
+        return new Loader();
+    }
+
+    // A new candidate is indexed under all its keys. A known one has its score
+    // raised, so it is indexed again under its keys with its current title, which
+    // keeps the index's score bounds valid (see PrefixIndex).
+    void addOrBoost(String url, String title, double score) {
+        Candidate candidate = byUrl.get(url);
+        if (candidate == null) {
+            candidate = newCandidate(url, title, score);
+            if (candidate == null) {
+                return;
+            }
+        } else {
+            candidate.score = Frecency.logAddExp(candidate.score, score);
+            if (title != null && !title.isEmpty() && !title.equals(candidate.title)) {
+                candidate.title = title;
+                candidate.searchText = null;
+            }
+        }
+        List<String> keys = new ArrayList<>();
+        List<Candidate> values = new ArrayList<>();
+        collectKeys(candidate, candidate.title, keys, values);
+        for (int i = 0; i < keys.size(); i++) {
+            index.add(keys.get(i), values.get(i));
+        }
+        hosts.add(candidate.hostKey, candidate);
+    }
+
+    void remove(String url) {
+        Candidate candidate = byUrl.remove(url);
+        if (candidate != null) {
+            candidate.removed = true;
+        }
+    }
+
+    // The best matches for the typed text, or null if cancelled
+    Result query(String text, final Cancellation cancellation) {
+        String raw = text.trim().toLowerCase(Locale.ROOT);
+        String normalized = stripUrlPrefix(raw);
+        if (normalized.isEmpty()) {
+            return new Result(new ArrayList<Candidate>(), null);
+        }
+        final String[] words = normalized.split("\\s+");
+        final int query = ++queries;
+        final Candidate[] top = new Candidate[MAX_RESULTS];
+        final Candidate[] bestHost = new Candidate[1];
+        final boolean[] cancelled = new boolean[1];
+
+        index.scan(words[0], new PrefixIndex.Visitor<Candidate>() {
+            private int visited;
+
+            @Override
+            public boolean visit(String key, Candidate candidate) {
+                if (++visited % CANCEL_CHECK_INTERVAL == 0 && cancellation.isCancelled()) {
+                    cancelled[0] = true;
+                    return false;
+                }
+                // A candidate can be reached through several keys
+                if (candidate.removed || candidate.seenBy == query || !containsAll(candidate, words)) {
+                    return true;
+                }
+                candidate.seenBy = query;
+                insertTop(top, candidate);
+                return true;
+            }
+
+            @Override
+            public double threshold() {
+                Candidate last = top[MAX_RESULTS - 1];
+                return last != null ? last.score : Double.NEGATIVE_INFINITY;
+            }
+        });
+        if (cancelled[0]) {
+            return null;
+        }
+        // Only a single word typed as a host prefix completes inline
+        if (words.length == 1 && normalized.equals(raw)) {
+            hosts.scan(normalized, new PrefixIndex.Visitor<Candidate>() {
+                @Override
+                public boolean visit(String key, Candidate candidate) {
+                    if (!candidate.removed && (bestHost[0] == null || candidate.score > bestHost[0].score)) {
+                        bestHost[0] = candidate;
+                    }
+                    return true;
+                }
+
+                @Override
+                public double threshold() {
+                    return bestHost[0] != null ? bestHost[0].score : Double.NEGATIVE_INFINITY;
+                }
+            });
+        }
+
+        List<Candidate> matches = new ArrayList<>(MAX_RESULTS);
+        for (Candidate candidate : top) {
+            if (candidate != null) {
+                matches.add(candidate);
+            }
+        }
+        String completion = bestHost[0] != null && bestHost[0].hostKey.length() > normalized.length()
+                ? bestHost[0].hostKey : null;
+        return new Result(matches, completion);
+    }
+
+    private Candidate newCandidate(String url, String title, double score) {
+        if (url == null || !url.startsWith("http")) {
+            return null;
+        }
+        String host = stripUrlPrefix(UrlHosts.host(url));
+        if (host.isEmpty()) {
+            return null;
+        }
+        Candidate candidate = new Candidate(url, host, title != null && !title.isEmpty() ? title : url, score);
+        byUrl.put(url, candidate);
+        return candidate;
+    }
+
+    private static void collectKeys(Candidate candidate, String title, List<String> keys, List<Candidate> values) {
+        keys.add(candidate.hostKey);
+        values.add(candidate);
+        String path = stripUrlPrefix(candidate.url.toLowerCase(Locale.ROOT));
+        if (path.length() > candidate.hostKey.length() + 1) {
+            keys.add(path);
+            values.add(candidate);
+        }
+        collectTitleKeys(candidate, title, keys, values);
+    }
+
+    private static void collectTitleKeys(Candidate candidate, String title, List<String> keys, List<Candidate> values) {
+        if (title == null || title.equals(candidate.url)) {
+            return;
+        }
+        int tokens = 0;
+        for (String token : title.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() >= 2) {
+                keys.add(token);
+                values.add(candidate);
+                if (++tokens == MAX_TITLE_TOKENS) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean containsAll(Candidate candidate, String[] words) {
+        if (words.length == 1) {
+            return true;
+        }
+        if (candidate.searchText == null) {
+            candidate.searchText = (candidate.url + " " + candidate.title).toLowerCase(Locale.ROOT);
+        }
+        for (int i = 1; i < words.length; i++) {
+            if (!candidate.searchText.contains(words[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Keeps the MAX_RESULTS highest scores, best first
+    private static void insertTop(Candidate[] top, Candidate candidate) {
+        int i = top.length - 1;
+        if (top[i] != null && top[i].score >= candidate.score) {
+            return;
+        }
+        while (i > 0 && (top[i - 1] == null || top[i - 1].score < candidate.score)) {
+            top[i] = top[i - 1];
+            i--;
+        }
+        top[i] = candidate;
+    }
+
+    static String stripUrlPrefix(String url) {
+        String result = url;
+        if (result.startsWith("https://")) {
+            result = result.substring(8);
+        } else if (result.startsWith("http://")) {
+            result = result.substring(7);
+        }
+        if (result.startsWith("www.")) {
+            result = result.substring(4);
+        }
+        return result;
+    }
+}
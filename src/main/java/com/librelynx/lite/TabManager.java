@@ -0,0 +1,314 @@
+package com.librelynx.lite;
+
+import android.content.ComponentCallbacks2;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Open tabs in display order, of which only the most recently used stay live.
+//
+// Every live WebView keeps a renderer and tens of megabytes, so past liveLimit the
+// least recently used background tab is hibernated (see BrowserTab) and woken
+// again when switched to. The limit follows the device's memory class, and
+// onTrimMemory tightens it while the system is short of memory. The active tab is
+// always live.
+//
+// Positions change as tabs close, so anything that outlives a redraw (dialog
+// listeners, saved state, thumbnails) refers to tabs by their stable id, looked up
+// through a map. close() is the only way out of the list and always releases the
+// tab's WebView.
+//
+// Only the active tab runs at full speed: activate() pauses the tab it replaces
+// (see BrowserTab.setVisible), and while the app is in the background the active
+// tab is paused too and JavaScript timers are frozen. Main thread only.
+final class TabManager {
+
+    interface WebViewFactory {
+        // A configured WebView for the tab, not yet attached to a parent
+        WebView create(BrowserTab tab);
+    }
+
+    private static final int MIN_LIVE_TABS = 2;
+    private static final int MAX_LIVE_TABS = 8;
+    // Rough per-tab budget: renderer, compositor buffers and JS heap
+    private static final int MB_PER_LIVE_TAB = 48;
+
+    // Work done by hidden tabs while the app is in the foreground, to compare tab
+    // counts and throttling: animation frames and timers their renderers ran
+    // (counted in the pages, see RendererProbe) and requests they made, which cost
+    // request filtering in this process. Only measured where the probe is
+    // installed, i.e. in debuggable builds.
+    static final class HiddenTabWork {
+        final StripedCounter requests = new StripedCounter();
+        private long wallStart;
+        private long requestsStart;
+
+        void start(TabManager tabs) {
+            wallStart = SystemClock.elapsedRealtime();
+            requestsStart = requests.sum();
+            for (BrowserTab tab : tabs.tabs) {
+                if (tab.isLive()) {
+                    RendererProbe.read(tab.webView(), true, counts -> { });
+                }
+            }
+        }
+
+        // Reads the counts from every live tab and delivers a log line once all
+        // have answered; a tab released first answers with no counts
+        void stop(TabManager tabs, ResultCallback<String> callback) {
+            long wall = Math.max(1, SystemClock.elapsedRealtime() - wallStart);
+            long requestCount = requests.sum() - requestsStart;
+            String described = tabs.describe();
+            List<BrowserTab> live = new ArrayList<>();
+            for (BrowserTab tab : tabs.tabs) {
+                if (tab.isLive()) {
+                    live.add(tab);
+                }
+            }
+            long[] totals = new long[3]; // frames, timers, tabs probed
+            int[] pending = {live.size()};
+            Runnable deliver = () -> callback.onResult(totals[0] + " frames and " + totals[1]
+                    + " timers in hidden pages (" + totals[2] + " probed), " + requestCount
+                    + " requests from hidden tabs in " + wall / 1000 + " s, tabs: " + described);
+            if (live.isEmpty()) {
+                deliver.run();
+                return;
+            }
+            for (BrowserTab tab : live) {
+                RendererProbe.read(tab.webView(), true, counts -> {
+                    if (counts != null) {
+                        totals[0] += counts[0];
+                        totals[1] += counts[1];
+                        totals[2]++;
+                    }
+                    if (--pending[0] == 0) {
+                        deliver.run();
+                    }
+                });
+            }
+        }
+    }
+
+    private final WebViewFactory factory;
+    private final List<BrowserTab> tabs = new ArrayList<>();
+    private final Map<Long, BrowserTab> byId = new HashMap<>();
+    private final int defaultLiveLimit;
+    private int liveLimit;
+    private int activeIndex;
+    private long clock;
+    private long nextTabId = 1;
+
+    TabManager(WebViewFactory factory, int liveLimit) {
+        this.factory = factory;
+        this.defaultLiveLimit = liveLimit;
+        this.liveLimit = liveLimit;
+    }
+
+    // Live tabs for a heap of memoryClassMb (ActivityManager.getMemoryClass())
+    static int liveLimitFor(int memoryClassMb, boolean lowRamDevice) {
+        if (lowRamDevice) {
+            return MIN_LIVE_TABS;
+        }
+        return Math.max(MIN_LIVE_TABS, Math.min(MAX_LIVE_TABS, memoryClassMb / MB_PER_LIVE_TAB));
+    }
+
+    // Read-only view in display order
+    List<BrowserTab> tabs() {
+        return Collections.unmodifiableList(tabs);
+    }
+
+    int size() {
+        return tabs.size();
+    }
+
+    int activeIndex() {
+        return activeIndex;
+    }
+
+    BrowserTab activeTab() {
+        return activeIndex >= 0 && activeIndex < tabs.size() ? tabs.get(activeIndex) : null;
+    }
+
+    // Null if there is no active tab or it has not been woken yet
+    WebView activeWebView() {
+        BrowserTab tab = activeTab();
+        return tab != null ? tab.webView() : null;
+    }
+
+    // Id for a new tab, never reused while restored tabs hold lower ones
+    long newTabId() {
+        return nextTabId++;
+    }
+
+    // The open tab with this id, or null once it is closed
+    BrowserTab find(long id) {
+        return byId.get(id);
+    }
+
+    // Current position of the tab with this id, or -1 once it is closed
+    int indexOf(long id) {
+        BrowserTab tab = byId.get(id);
+        return tab != null ? tabs.indexOf(tab) : -1;
+    }
+
+    // Appends a tab without activating it; returns its index
+    int add(BrowserTab tab) {
+        tabs.add(tab);
+        byId.put(tab.id, tab);
+        nextTabId = Math.max(nextTabId, tab.id + 1);
+        return tabs.size() - 1;
+    }
+
+    // Makes the tab active, waking it if it was hibernated, and hibernates the least
+    // recently used tabs beyond the limit. Returns the tab's WebView.
+    WebView activate(int index) {
+        BrowserTab previous = activeTab();
+        BrowserTab tab = tabs.get(index);
+        activeIndex = index;
+        tab.lastUsed = ++clock;
+        if (!tab.isLive()) {
+            tab.wake(factory.create(tab));
+            Log.d("TabManager", "Woke tab " + index);
+        }
+        if (previous != null && previous != tab) {
+            previous.setVisible(false);
+        }
+        tab.setVisible(true);
+        // A limit lowered by memory pressure recovers one tab per switch
+        if (liveLimit < defaultLiveLimit) {
+            liveLimit++;
+        }
+        enforceLimit();
+        return tab.webView();
+    }
+
+    // Removes the tab, destroys its WebView and moves the active index to a
+    // neighbour; the caller re-activates if the closed tab was the active one
+    BrowserTab close(int index) {
+        BrowserTab closed = tabs.remove(index);
+        byId.remove(closed.id);
+        closed.destroyWebView();
+        if (index <= activeIndex) {
+            activeIndex = Math.max(0, activeIndex - 1);
+        }
+        return closed;
+    }
+
+    // Renderer deaths (see BrowserTab.onRendererGone), with what was open at the
+    // time, so they can be correlated with tab count and memory class
+    static final class RendererDeaths {
+        long crashes;  // the renderer crashed
+        long kills;    // the system killed it, usually for memory
+        long liveTabsAtDeaths; // summed over deaths, including the dying tab
+        private final int memoryClassMb;
+
+        RendererDeaths(int memoryClassMb) {
+            this.memoryClassMb = memoryClassMb;
+        }
+
+        // Call before the dead tab is released; returns a log line describing the event
+        String record(boolean crashed, int priorityAtExit, TabManager tabs) {
+            if (crashed) {
+                crashes++;
+            } else {
+                kills++;
+            }
+            liveTabsAtDeaths += tabs.liveCount();
+            return (crashed ? "crashed" : "killed") + " at priority " + priorityAtExit + ", tabs: "
+                    + tabs.describe() + ", memory class " + memoryClassMb + " MB; " + this;
+        }
+
+        @Override
+        public String toString() {
+            long deaths = crashes + kills;
+            return crashes + " crashes, " + kills + " kills, "
+                    + (deaths == 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", (double) liveTabsAtDeaths / deaths))
+                    + " live tabs at death on average";
+        }
+    }
+
+    // The app went to the background; WebView can only pause timers process-wide
+    void pauseAll() {
+        BrowserTab tab = activeTab();
+        if (tab != null && tab.isLive()) {
+            tab.setVisible(false);
+            tab.webView().pauseTimers();
+        }
+    }
+
+    void resumeAll() {
+        BrowserTab tab = activeTab();
+        if (tab != null && tab.isLive()) {
+            tab.webView().resumeTimers();
+            tab.setVisible(true);
+        }
+    }
+
+    void onTrimMemory(int level) {
+        int limit;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            limit = 1; // only the active tab
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            limit = Math.max(1, defaultLiveLimit / 2);
+        } else {
+            return;
+        }
+        liveLimit = Math.min(liveLimit, limit);
+        Log.d("TabManager", "Trim level " + level + ", keeping " + liveLimit + " tabs live");
+        enforceLimit();
+    }
+
+    void destroyAll() {
+        for (BrowserTab tab : tabs) {
+            tab.destroyWebView();
+        }
+        tabs.clear();
+        byId.clear();
+    }
+
+    // Debug check that every WebView handed to a tab is held by a live tab, i.e.
+    // no close or hibernation path leaked one
+    boolean webViewsAccountedFor() {
+        return BrowserTab.liveWebViews() == liveCount();
+    }
+
+    // For logs: open tabs, live tabs and WebViews not yet destroyed
+    String describe() {
+        return tabs.size() + " open, " + liveCount() + " live, " + BrowserTab.liveWebViews() + " WebViews alive";
+    }
+
+    private void enforceLimit() {
+        while (liveCount() > liveLimit) {
+            BrowserTab oldest = null;
+            for (int i = 0; i < tabs.size(); i++) {
+                BrowserTab tab = tabs.get(i);
+                if (i != activeIndex && tab.isLive() && (oldest == null || tab.lastUsed < oldest.lastUsed)) {
+                    oldest = tab;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            oldest.hibernate();
+            Log.d("TabManager", "Hibernated tab " + tabs.indexOf(oldest) + " (" + oldest.url() + ")");
+        }
+    }
+
+    int liveCount() {
+        int live = 0;
+        for (BrowserTab tab : tabs) {
+            if (tab.isLive()) {
+                live++;
+            }
+        }
+        return live;
+    }
+}
@@ -0,0 +1,194 @@
+package com.librelynx.lite;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.PixelCopy;
+import android.view.View;
+import android.view.Window;
+import android.widget.ImageView;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+// Downsampled snapshots of tabs for the tab lists, keyed by tab id.
+//
+// A tab is captured as it goes to the background, with PixelCopy from the window
+// surface: the copy and the scaling happen on the render thread and report back
+// later, so switching tabs never waits for it. Snapshots stay in an LruCache sized
+// from the memory class and are spilled to a small WebP disk cache, where they
+// outlive hibernation and restarts; tab lists decode them off the main thread.
+// Before Android 8, which has no PixelCopy, tabs show the placeholder icon.
+final class TabThumbnails {
+
+    private static final String DIRECTORY = "thumbnails";
+    // Width of a snapshot in pixels; the height follows the tab's aspect ratio up to 4:3
+    private static final int WIDTH = 240;
+    private static final int MAX_HEIGHT = WIDTH * 4 / 3;
+    private static final int QUALITY = 70;
+    // Share of the app heap given to decoded snapshots
+    private static final int MEMORY_FRACTION = 32;
+
+    private static Handler io;
+
+    private final File directory;
+    private final LruCache<Long, Bitmap> memory;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    TabThumbnails(Context context, int memoryClassMb) {
+        this.directory = new File(context.getCacheDir(), DIRECTORY);
+        this.memory = new LruCache<Long, Bitmap>(memoryClassMb * 1024 * 1024 / MEMORY_FRACTION) {
+            @Override
+            protected int sizeOf(Long tabId, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    private static synchronized Handler io() {
+        if (io == null) {
+            HandlerThread thread = new HandlerThread("thumbnail-io", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            io = new Handler(thread.getLooper());
+        }
+        return io;
+    }
+
+    // Starts an asynchronous snapshot of the view as it is on screen now. Call
+    // before the view is replaced; the last drawn frame is what gets copied.
+    void capture(Window window, View view, final long tabId) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || window == null
+                || view.getWidth() == 0 || view.getHeight() == 0 || !view.isAttachedToWindow()) {
+            return;
+        }
+        int[] location = new int[2];
+        view.getLocationInWindow(location);
+        int sourceHeight = Math.min(view.getHeight(), view.getWidth() * MAX_HEIGHT / WIDTH);
+        Rect source = new Rect(location[0], location[1], location[0] + view.getWidth(), location[1] + sourceHeight);
+        int height = Math.max(1, WIDTH * sourceHeight / view.getWidth());
+        final Bitmap bitmap = Bitmap.createBitmap(WIDTH, height, Bitmap.Config.ARGB_8888);
+        try {
+            PixelCopy.request(window, source, bitmap, result -> {
+                if (result != PixelCopy.SUCCESS) {
+                    Log.d("TabThumbnails", "Snapshot of tab " + tabId + " failed: " + result);
+                    return;
+                }
+                memory.put(tabId, bitmap);
+                io().post(() -> write(tabId, bitmap));
+            }, mainHandler);
+        } catch (IllegalArgumentException e) {
+            Log.e("TabThumbnails", "Error in capture: " + e.getMessage(), e);
+        }
+    }
+
+    // Shows the tab's snapshot in the view, decoding it from disk in the background
+    // if needed; the placeholder (0 for none) stays when there is none. Safe with
+    // recycled views.
+    void bind(final ImageView view, final long tabId, int placeholderRes) {
+        view.setTag(R.id.tab_thumbnail, tabId);
+        Bitmap cached = memory.get(tabId);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        if (placeholderRes != 0) {
+            view.setImageResource(placeholderRes);
+        } else {
+            view.setImageBitmap(null);
+        }
+        io().post(() -> {
+            File file = file(tabId);
+            final Bitmap decoded = file.isFile() ? BitmapFactory.decodeFile(file.getPath()) : null;
+            if (decoded == null) {
+                return;
+            }
+            mainHandler.post(() -> {
+                if (memory.get(tabId) == null) {
+                    memory.put(tabId, decoded);
+                }
+                if (Long.valueOf(tabId).equals(view.getTag(R.id.tab_thumbnail))) {
+                    view.setImageBitmap(decoded);
+                }
+            });
+        });
+    }
+
+    void remove(final long tabId) {
+        memory.remove(tabId);
+        io().post(() -> file(tabId).delete());
+    }
+
+    // Deletes snapshots of tabs that are no longer open
+    void deleteOrphans(final Set<Long> openTabIds) {
+        io().post(() -> {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(".tmp")) {
+                    file.delete();
+                    continue;
+                }
+                try {
+                    long id = Long.parseLong(name.substring(0, name.indexOf('.')));
+                    if (!openTabIds.contains(id)) {
+                        file.delete();
+                    }
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    // Decoded snapshots can be read back from disk, so they go first under pressure
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            memory.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            memory.trimToSize(memory.maxSize() / 2);
+        }
+    }
+
+    private File file(long tabId) {
+        return new File(directory, tabId + ".webp");
+    }
+
+    @SuppressWarnings("deprecation")
+    private void write(long tabId, Bitmap bitmap) {
+        Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        File target = file(tabId);
+        File temp = new File(target.getPath() + ".tmp");
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                bitmap.compress(format, QUALITY, out);
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Cannot replace " + target);
+            }
+        } catch (IOException e) {
+            Log.e("TabThumbnails", "Error writing thumbnail: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.librelynx.lite;
+
+import java.util.Locale;
+
+// Allocation-free helpers for locating the host inside a URL string.
+// Navigation and request hooks call these on every load, so they work on
+// index ranges instead of building Uri objects.
+final class UrlHosts {
+
+    private UrlHosts() {}
+
+    // Index of the first host character, skipping the scheme and any user info
+    static int hostStart(String url) {
+        int start = 0;
+        int scheme = url.indexOf("://");
+        if (scheme >= 0) {
+            start = scheme + 3;
+        } else if (url.startsWith("//")) {
+            start = 2;
+        }
+        // user:pass@host - only an '@' before the first path character counts
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            if (c == '@') {
+                start = i + 1;
+            }
+        }
+        return start;
+    }
+
+    // Index just past the last host character (port, path, query and fragment excluded)
+    static int hostEnd(String url, int hostStart) {
+        int i = hostStart;
+        if (i < url.length() && url.charAt(i) == '[') {
+            // IPv6 literal, keep the brackets as part of the host
+            int close = url.indexOf(']', i);
+            return close < 0 ? url.length() : close + 1;
+        }
+        for (; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#' || c == ':') {
+                break;
+            }
+        }
+        // Tolerate a trailing dot ("example.com.")
+        if (i > hostStart && url.charAt(i - 1) == '.') {
+            i--;
+        }
+        return i;
+    }
+
+    // Index of the path, or url.length() if the URL has no path
+    static int pathStart(String url, int hostEnd) {
+        for (int i = hostEnd; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return c == '/' ? i : url.length();
+            }
+        }
+        return url.length();
+    }
+
+    // Lower-cased host, or an empty string if the URL has none
+    static String host(String url) {
+        if (url == null) {
+            return "";
+        }
+        int start = hostStart(url);
+        int end = hostEnd(url, start);
+        return end > start ? url.substring(start, end).toLowerCase(Locale.ROOT) : "";
+    }
+
+    // Start of the registrable domain inside s[start, end), e.g. "example.co.uk" in
+    // "www.example.co.uk". This approximates the public suffix list: the last label
+    // is the suffix, plus a common second-level label under a two-letter country code.
+    static int siteStart(String s, int start, int end) {
+        int dot1 = s.lastIndexOf('.', end - 1);
+        if (dot1 < start || isNumericLabel(s, dot1 + 1, end)) {
+            return start; // single label or IPv4 address, the host is the site
+        }
+        int dot2 = s.lastIndexOf('.', dot1 - 1);
+        if (dot2 < start) {
+            return start;
+        }
+        if (end - dot1 - 1 == 2 && isCommonSecondLevel(s, dot2 + 1, dot1)) {
+            int dot3 = s.lastIndexOf('.', dot2 - 1);
+            return dot3 < start ? start : dot3 + 1;
+        }
+        return dot2 + 1;
+    }
+
+    // True if both hosts belong to the same registrable domain
+    static boolean sameSite(String a, int aStart, int aEnd, String b, int bStart, int bEnd) {
+        int siteA = siteStart(a, aStart, aEnd);
+        int siteB = siteStart(b, bStart, bEnd);
+        int length = aEnd - siteA;
+        return length == bEnd - siteB && a.regionMatches(true, siteA, b, siteB, length);
+    }
+
+    private static final String[] SECOND_LEVEL_LABELS = {
+        "co", "com", "net", "org", "gov", "edu", "ac", "or", "ne", "go"
+    };
+
+    private static boolean isCommonSecondLevel(String s, int from, int to) {
+        int length = to - from;
+        for (String label : SECOND_LEVEL_LABELS) {
+            if (label.length() == length && s.regionMatches(true, from, label, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumericLabel(String s, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
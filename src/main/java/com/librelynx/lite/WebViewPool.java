@@ -0,0 +1,144 @@
+package com.librelynx.lite;
+
+import android.content.ComponentCallbacks2;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Spare WebViews, constructed and configured ahead of time so opening a tab does
+// not pay for WebView construction, one of the most expensive calls on the main
+// thread.
+//
+// Spares are built from a main-thread IdleHandler, one per idle moment, so the
+// work lands between frames rather than in front of them. fill() is first called
+// once the first page has painted, and again after every take(). Under memory
+// pressure the pool drops its spares and stops refilling for a while. Main thread
+// only.
+final class WebViewPool {
+
+    interface Factory {
+        // A WebView with tab-independent settings applied, not bound to a tab yet
+        WebView create();
+    }
+
+    // New-tab latency with and without a spare, for comparing the two
+    static final class Latency {
+        private long pooledCount;
+        private long pooledNanos;
+        private long coldCount;
+        private long coldNanos;
+
+        void record(boolean pooled, long nanos) {
+            if (pooled) {
+                pooledCount++;
+                pooledNanos += nanos;
+            } else {
+                coldCount++;
+                coldNanos += nanos;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "new tab: " + average(pooledCount, pooledNanos) + " with a spare WebView, "
+                    + average(coldCount, coldNanos) + " without";
+        }
+
+        private static String average(long count, long nanos) {
+            return count == 0 ? "n/a" : String.format(Locale.ROOT, "%.1f ms avg of %d", nanos / 1e6 / count, count);
+        }
+    }
+
+    // How long refilling stays off after the system reported memory pressure
+    private static final long PRESSURE_BACKOFF_MS = 60_000;
+
+    private final Factory factory;
+    private final int size;
+    private final List<WebView> spares = new ArrayList<>();
+    private boolean fillScheduled;
+    private long pressureUntil;
+
+    private final MessageQueue.IdleHandler filler = this::fillOne;
+
+    WebViewPool(Factory factory, int size) {
+        this.factory = factory;
+        this.size = size;
+    }
+
+    boolean hasSpare() {
+        return !spares.isEmpty();
+    }
+
+    // A spare WebView, or null if none is ready; schedules a replacement
+    WebView take() {
+        WebView spare = spares.isEmpty() ? null : spares.remove(spares.size() - 1);
+        fill();
+        return spare;
+    }
+
+    // Tops the pool up from the next idle moments
+    void fill() {
+        if (fillScheduled || spares.size() >= size || SystemClock.uptimeMillis() < pressureUntil) {
+            return;
+        }
+        fillScheduled = true;
+        Looper.myQueue().addIdleHandler(filler);
+    }
+
+    // Returns true while more spares are needed, keeping the handler installed
+    private boolean fillOne() {
+        if (spares.size() >= size || SystemClock.uptimeMillis() < pressureUntil) {
+            fillScheduled = false;
+            return false;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            spares.add(factory.create());
+        } catch (RuntimeException e) {
+            Log.e("WebViewPool", "Error creating spare WebView: " + e.getMessage(), e);
+            fillScheduled = false;
+            return false;
+        }
+        Log.d("WebViewPool", String.format(Locale.ROOT, "Spare WebView ready in %.1f ms",
+                (SystemClock.elapsedRealtimeNanos() - start) / 1e6));
+        fillScheduled = spares.size() < size;
+        return fillScheduled;
+    }
+
+    // A spare whose renderer died is unusable. Renderers usually die for memory,
+    // so it is replaced only after the same backoff as under memory pressure.
+    void discard(WebView spare) {
+        if (spares.remove(spare)) {
+            spare.destroy();
+            pressureUntil = SystemClock.uptimeMillis() + PRESSURE_BACKOFF_MS;
+        }
+    }
+
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            pressureUntil = SystemClock.uptimeMillis() + PRESSURE_BACKOFF_MS;
+            if (!spares.isEmpty()) {
+                Log.d("WebViewPool", "Trim level " + level + ", releasing " + spares.size() + " spare WebViews");
+            }
+            clear();
+        }
+    }
+
+    void clear() {
+        if (fillScheduled) {
+            Looper.myQueue().removeIdleHandler(filler);
+            fillScheduled = false;
+        }
+        for (WebView spare : spares) {
+            spare.destroy();
+        }
+        spares.clear();
+    }
+}
@@ -0,0 +1,89 @@
+package com.librelynx.lite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+// Paging the history dialog through a real SQLite database. Imported entries with
+// the same visit count and last visit have exactly the same frecency, so pages
+// have to break inside runs of ties.
+@RunWith(RobolectricTestRunner.class)
+public class HistoryStoreTest {
+
+    private static final long TIED_VISIT = 1690000000000L;
+    private static final int TIED = 10;
+    private static final int PAGE_SIZE = 3;
+
+    @Test
+    public void pagesThroughTiesWithoutSkipsOrRepeats() throws Exception {
+        HistoryStore store = HistoryStore.get(RuntimeEnvironment.getApplication());
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < TIED; i++) {
+            lines.append(line("https://tied.example/" + i, 2, TIED_VISIT));
+        }
+        // Ranked above and below the ties
+        lines.append(line("https://recent.example/", 2, TIED_VISIT + 86400000L));
+        lines.append(line("https://older.example/", 2, TIED_VISIT - 86400000L));
+        final AtomicReference<DataTransfer.Result> imported = new AtomicReference<>();
+        store.importJsonLines(new ByteArrayInputStream(lines.toString().getBytes(StandardCharsets.UTF_8)), null,
+                imported::set);
+        await(imported);
+        assertEquals(TIED + 2, imported.get().added);
+
+        List<HistoryStore.Entry> seen = new ArrayList<>();
+        HistoryStore.Page page = null;
+        do {
+            final AtomicReference<HistoryStore.Page> next = new AtomicReference<>();
+            store.queryPage(page, PAGE_SIZE, next::set);
+            page = await(next);
+            assertTrue(page.entries.size() <= PAGE_SIZE);
+            seen.addAll(page.entries);
+        } while (page.hasMore);
+
+        assertEquals(TIED + 2, seen.size());
+        Set<String> urls = new HashSet<>();
+        for (HistoryStore.Entry entry : seen) {
+            assertTrue("Repeated " + entry.url, urls.add(entry.url));
+        }
+        assertEquals("https://recent.example/", seen.get(0).url);
+        assertEquals("https://older.example/", seen.get(seen.size() - 1).url);
+        for (int i = 1; i < seen.size(); i++) {
+            HistoryStore.Entry previous = seen.get(i - 1);
+            HistoryStore.Entry entry = seen.get(i);
+            assertTrue(previous.frecencyKey > entry.frecencyKey
+                    || previous.frecencyKey == entry.frecencyKey && previous.id < entry.id);
+        }
+        assertFalse(page.hasMore);
+    }
+
+    private static String line(String url, int visitCount, long lastVisit) {
+        return "{\"url\":\"" + url + "\",\"title\":\"" + url + "\",\"visit_count\":" + visitCount
+                + ",\"last_visit\":" + lastVisit + "}\n";
+    }
+
+    // Results are posted to the main looper, which Robolectric only runs when idled
+    private static <T> T await(AtomicReference<T> result) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (result.get() == null && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(5);
+        }
+        assertNotNull("Timed out", result.get());
+        return result.get();
+    }
+}
@@ -0,0 +1,136 @@
+package com.librelynx.lite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+// The callbacks WebView sends for one tab, replayed on a manual clock: only the
+// visits NavigationTracker settles on reach history.
+public class NavigationTrackerTest {
+
+    // Runs delayed tasks when the test advances time
+    private static final class ManualScheduler implements NavigationTracker.Scheduler {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<Long> dueTimes = new ArrayList<>();
+        private long now;
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            tasks.add(task);
+            dueTimes.add(now + delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    dueTimes.remove(i);
+                }
+            }
+        }
+
+        void advance(long ms) {
+            now += ms;
+            for (int i = 0; i < tasks.size(); ) {
+                if (dueTimes.get(i) <= now) {
+                    Runnable task = tasks.remove(i);
+                    dueTimes.remove(i);
+                    task.run();
+                } else {
+                    i++;
+                }
+            }
+        }
+    }
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final NavigationTracker.Counters counters = new NavigationTracker.Counters();
+    private final List<String> visits = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+    private NavigationTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new NavigationTracker(scheduler, new NavigationTracker.Sink() {
+            @Override
+            public void onVisit(String url, String title) {
+                visits.add(url + " " + title);
+            }
+
+            @Override
+            public void onTitle(String url, String title) {
+                titles.add(url + " " + title);
+            }
+        }, counters);
+    }
+
+    @Test
+    public void redirectChainIsOneVisit() {
+        tracker.onNavigated("http://example.com/", null);
+        scheduler.advance(100);
+        tracker.onNavigated("https://example.com/", null);
+        scheduler.advance(200);
+        tracker.onNavigated("https://www.example.com/home", null);
+        // onPageFinished reports the same document again
+        tracker.onNavigated("https://www.example.com/home", "https://www.example.com/home");
+        scheduler.advance(NavigationTracker.SETTLE_MS - 1);
+        assertEquals(0, counters.visits);
+
+        scheduler.advance(1);
+        assertEquals(1, counters.visits);
+        assertEquals(2, counters.coalesced);
+        assertEquals(1, counters.duplicates);
+        assertEquals("[https://www.example.com/home null]", visits.toString());
+    }
+
+    @Test
+    public void fragmentJumpsAreNotVisits() {
+        tracker.onNavigated("https://example.com/guide", "Guide");
+        scheduler.advance(NavigationTracker.SETTLE_MS);
+        tracker.onNavigated("https://example.com/guide#install", null);
+        tracker.onNavigated("https://example.com/guide#usage", null);
+        scheduler.advance(NavigationTracker.SETTLE_MS);
+
+        assertEquals(1, counters.visits);
+        assertEquals(2, counters.duplicates);
+        assertEquals("[https://example.com/guide Guide]", visits.toString());
+    }
+
+    @Test
+    public void titleBeforeSettlingJoinsTheVisit() {
+        tracker.onNavigated("https://example.com/", null);
+        tracker.onTitle("https://example.com/");
+        tracker.onTitle("Example");
+        scheduler.advance(NavigationTracker.SETTLE_MS);
+
+        assertEquals(1, counters.visits);
+        assertEquals(0, counters.titleUpdates);
+        assertEquals("[https://example.com/ Example]", visits.toString());
+    }
+
+    @Test
+    public void lateTitleUpdatesTheStoredVisit() {
+        tracker.onNavigated("https://example.com/", null);
+        scheduler.advance(NavigationTracker.SETTLE_MS);
+        tracker.onTitle("Example");
+        tracker.onTitle("Example");
+
+        assertEquals(1, counters.visits);
+        assertEquals(1, counters.titleUpdates);
+        assertEquals("[https://example.com/ Example]", titles.toString());
+    }
+
+    @Test
+    public void commitNowWritesThePendingVisit() {
+        tracker.onNavigated("https://example.com/", "Example");
+        tracker.commitNow();
+        scheduler.advance(NavigationTracker.SETTLE_MS);
+
+        assertEquals(1, counters.visits);
+        assertEquals("[https://example.com/ Example]", visits.toString());
+    }
+}